@@ -0,0 +1,92 @@
+package tictactoebot;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of move generation, make/unmake, win detection, symmetry and
+ * heuristic evaluation on the standard positions. Every benchmark leaves the
+ * position unchanged.
+ * 
+ * @author rongil
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+	@Param({ Positions.EMPTY_3X3, Positions.OPENING_3X3,
+			Positions.OPENING_4X4, Positions.OPENING_15X15 })
+	public String position;
+
+	private Board board;
+	private int playerID;
+	private int[] squares;
+	// Evaluates any board passed in, whatever its own board is.
+	private Search search;
+
+	@Setup
+	public void setUp() {
+		board = Positions.create(position);
+		playerID = Positions.getPlayerToMove(board);
+		squares = new int[board.getGeometry().getSquares()];
+		search = new Search(new Board(), Board.X, new TranspositionTable(1));
+	}
+
+	@Benchmark
+	public int getValidMoves() {
+		return board.getValidMoves().size();
+	}
+
+	@Benchmark
+	public int getValidSquares() {
+		return board.getValidSquares(squares);
+	}
+
+	@Benchmark
+	public long makeUnmakeMove() {
+		int square = Positions.getFirstEmptySquare(board);
+		board.makeMove(square, playerID);
+		long hash = board.getHash(playerID);
+		board.unmakeMove(square);
+		return hash;
+	}
+
+	@Benchmark
+	public Board testMove() {
+		return board.testMove(board.getMove(Positions
+				.getFirstEmptySquare(board)), playerID);
+	}
+
+	@Benchmark
+	public int checkGameOver() {
+		return board.checkGameOver();
+	}
+
+	@Benchmark
+	public int getCanonicalSymmetry() {
+		return board.getCanonicalSymmetry();
+	}
+
+	@Benchmark
+	public int calculateHeuristic() {
+		return search.calculateHeuristic(board, playerID,
+				board.checkGameOver());
+	}
+
+}
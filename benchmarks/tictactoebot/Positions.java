@@ -0,0 +1,77 @@
+package tictactoebot;
+
+/**
+ * Standard positions every benchmark runs on, from the empty 3x3 board to a
+ * sparse 15x15 Gomoku position. Benchmarks take one of the names as a JMH
+ * parameter.
+ * 
+ * @author rongil
+ *
+ */
+final class Positions {
+
+	// Names of the positions, in the order of POSITIONS.
+	static final String EMPTY_3X3 = "3x3-empty";
+	static final String OPENING_3X3 = "3x3-opening";
+	static final String OPENING_4X4 = "4x4-opening";
+	static final String OPENING_15X15 = "15x15-opening";
+	private static final String[] NAMES = { EMPTY_3X3, OPENING_3X3,
+			OPENING_4X4, OPENING_15X15 };
+
+	// Width, height, k, then the squares played (X first).
+	private static final int[][] POSITIONS = { { 3, 3, 3 },
+			{ 3, 3, 3, 4, 0, 8 }, { 4, 4, 4, 5, 10, 0, 15 },
+			{ 15, 15, 5, 112, 113, 97, 128, 98, 126 } };
+
+	private Positions() {
+	}
+
+	/**
+	 * Builds a standard position.
+	 * 
+	 * @param name
+	 *            - one of the position names
+	 * @return - the board
+	 */
+	static Board create(String name) {
+		for (int i = 0; i < NAMES.length; ++i) {
+			if (NAMES[i].equals(name)) {
+				int[] position = POSITIONS[i];
+				Board board = new Board(position[0], position[1],
+						position[2]);
+				for (int j = 3; j < position.length; ++j) {
+					board.makeMove(position[j], j % 2 == 1 ? Board.X
+							: Board.O);
+				}
+				return board;
+			}
+		}
+		throw new IllegalArgumentException("Unknown position: " + name);
+	}
+
+	/**
+	 * Returns the player to move in a position.
+	 * 
+	 * @param board
+	 *            - the position
+	 * @return - X after an even number of moves, otherwise O
+	 */
+	static int getPlayerToMove(Board board) {
+		return board.getNumberOfMoves() % 2 == 0 ? Board.X : Board.O;
+	}
+
+	/**
+	 * Finds a valid move without allocating, so benchmarks of moves do not
+	 * also measure move generation.
+	 * 
+	 * @return - the lowest empty square
+	 */
+	static int getFirstEmptySquare(Board board) {
+		int square = 0;
+		while (board.getSquareValue(square) != Board.EMPTY) {
+			++square;
+		}
+		return square;
+	}
+
+}
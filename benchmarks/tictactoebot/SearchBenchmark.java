@@ -0,0 +1,74 @@
+package tictactoebot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tictactoebot.Board.Move;
+
+/**
+ * Benchmarks of fixed-depth alpha-beta searches on the standard positions.
+ * Every search starts from an empty transposition table so it does the same
+ * work. Clearing the table and creating the search happen outside the timed
+ * region, and the searches are not added to the process-wide EngineMetrics.
+ * 
+ * @author rongil
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+	// Depth of the fixed-depth searches.
+	private static final int SEARCH_DEPTH = 4;
+
+	@Param({ "minimax", "negamax", "pvs" })
+	public String searchType;
+
+	@Param({ Positions.EMPTY_3X3, Positions.OPENING_3X3,
+			Positions.OPENING_4X4, Positions.OPENING_15X15 })
+	public String position;
+
+	private Board board;
+	private final TranspositionTable transpositionTable =
+			new TranspositionTable();
+	private Search search;
+
+	@Setup
+	public void setUpPosition() {
+		board = Positions.create(position);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpSearch() {
+		transpositionTable.clear();
+		search = new Search(board, Positions.getPlayerToMove(board),
+				transpositionTable);
+		search.setQuiet(true);
+		search.setRecorded(false);
+		search.setSearchType(Search.getSearchType(searchType));
+		search.setLimits(SearchLimits.depth(SEARCH_DEPTH));
+	}
+
+	@Benchmark
+	public Move search() throws TimeoutException {
+		return search.call();
+	}
+
+}
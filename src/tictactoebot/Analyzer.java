@@ -0,0 +1,449 @@
+package tictactoebot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tictactoebot.Board.Move;
+
+/**
+ * Analyzes a stream of positions, writing the best move and score of each in
+ * the order the positions were read. Positions are searched concurrently on
+ * an Engine, but only a few per engine thread are in memory at a time, so
+ * streams of any length can be analyzed.
+ * 
+ * Positions are read in one of two encodings, all on the same board size:
+ * 
+ * <pre>
+ * text    One position per line: a character per square, row by row, x, o
+ *         or . (empty), optionally with / between rows (x.o/.x./...).
+ *         Blank lines are skipped.
+ * binary  One record per position: a byte with the number of moves, then
+ *         a byte per move with its square index, X moving first.
+ * </pre>
+ * 
+ * Each position is answered with one line: the best move as in Protocol, the
+ * score for the player to move, the depth and the nodes searched (c3 0 9
+ * 1234). Positions whose game is over are answered (none), and positions that
+ * cannot be read are answered invalid.
+ * 
+ * Analysis written to a file can be resumed: the positions already answered
+ * in the file are skipped and the rest are appended, after dropping any
+ * partly written last line. Searches share a transposition table, so a
+ * move or score may differ from one run to another when the table holds
+ * deeper results for some positions.
+ * 
+ * @author rongil
+ *
+ */
+public class Analyzer {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Answers for positions without a move to search.
+	private static final String NO_MOVE = "(none)";
+	private static final String INVALID = "invalid";
+	// Positions in memory per engine thread.
+	private static final int POSITIONS_PER_THREAD = 4;
+	// Answers written between flushes.
+	private static final int FLUSH_INTERVAL = 1024;
+
+	private final Engine engine;
+	private final BoardGeometry geometry;
+	// Shared by every search: positions from the same games overlap.
+	private final TranspositionTable transpositionTable =
+			new TranspositionTable();
+	private int searchType = Search.NEGAMAX_ALPHA_BETA;
+	private SearchLimits limits = SearchLimits.DEFAULT;
+	private boolean binary;
+
+	/**
+	 * Creates an analyzer of positions on one board size.
+	 * 
+	 * @param engine
+	 *            - the engine running the searches
+	 * @param geometry
+	 *            - the shape of the board of every position
+	 */
+	public Analyzer(Engine engine, BoardGeometry geometry) {
+		this.engine = engine;
+		this.geometry = geometry;
+	}
+
+	/**
+	 * Sets the search method used for every position.
+	 * 
+	 * @param searchType
+	 *            - one of the search types defined by Search
+	 */
+	public void setSearchType(int searchType) {
+		this.searchType = searchType;
+	}
+
+	/**
+	 * Sets how long each position may be searched. A depth or node limit
+	 * gives every position the same effort however busy the engine is.
+	 * 
+	 * @param limits
+	 *            - the limits (SearchLimits.DEFAULT by default)
+	 */
+	public void setLimits(SearchLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Sets whether positions are read as binary records instead of text.
+	 * 
+	 * @param binary
+	 *            - true for binary records (false by default)
+	 */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * Analyzes every position, appending the answers to a file. Positions
+	 * already answered in the file, by an earlier run that was interrupted,
+	 * are skipped.
+	 * 
+	 * @param input
+	 *            - the positions
+	 * @param file
+	 *            - the file to write the answers to
+	 * @return - the number of positions analyzed by this run
+	 * @throws IOException
+	 *             - if reading or writing fails
+	 * @throws InterruptedException
+	 *             - if the thread is interrupted while waiting for searches
+	 */
+	public long run(InputStream input, File file) throws IOException,
+			InterruptedException {
+
+		long answered = file.exists() ? truncateToLastLine(file) : 0;
+		if (answered > 0) {
+			logger.log(Level.INFO, "Resuming after " + answered
+					+ " position(s).");
+		}
+		Writer output = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file, true), StandardCharsets.US_ASCII));
+		try {
+			return run(input, output, answered);
+		} finally {
+			output.close();
+		}
+
+	}
+
+	/**
+	 * Analyzes every position after the first few, writing the answers.
+	 * 
+	 * @param input
+	 *            - the positions
+	 * @param output
+	 *            - where the answers are written
+	 * @param skip
+	 *            - the number of positions to skip
+	 * @return - the number of positions analyzed
+	 * @throws IOException
+	 *             - if reading or writing fails
+	 * @throws InterruptedException
+	 *             - if the thread is interrupted while waiting for searches
+	 */
+	public long run(InputStream input, Writer output, long skip)
+			throws IOException, InterruptedException {
+
+		long startTime = System.nanoTime();
+		PositionReader reader = binary ? new BinaryReader(input)
+				: new TextReader(input);
+		for (long i = 0; i < skip; ++i) {
+			if (!reader.next()) {
+				return 0;
+			}
+		}
+
+		// Searches in input order; the oldest is answered first, so the
+		// answers keep that order while later searches run.
+		Queue<Pending> pending = new ArrayDeque<Pending>();
+		int window = engine.getThreads() * POSITIONS_PER_THREAD;
+		long analyzed = 0;
+		while (reader.next()) {
+			if (pending.size() == window) {
+				writeAnswer(pending.poll(), output);
+				if (++analyzed % FLUSH_INTERVAL == 0) {
+					output.flush();
+				}
+			}
+			pending.add(submit(reader.board));
+		}
+		while (!pending.isEmpty()) {
+			writeAnswer(pending.poll(), output);
+			++analyzed;
+		}
+		output.flush();
+
+		logger.log(Level.INFO, "Analyzed " + analyzed + " position(s) in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+				+ " ms.");
+		return analyzed;
+
+	}
+
+	/**
+	 * Starts searching a position, unless there is nothing to search.
+	 * 
+	 * @param board
+	 *            - the position, or null if it could not be read
+	 * @return - the search in progress, or the answer
+	 */
+	private Pending submit(Board board) {
+		if (board == null) {
+			return new Pending(INVALID);
+		}
+		if (board.checkGameOver() != Board.INCOMPLETE) {
+			return new Pending(NO_MOVE);
+		}
+		Search search = new Search(board, getPlayerToMove(board),
+				transpositionTable);
+		search.setSearchType(searchType);
+		search.setLimits(limits);
+		search.setQuiet(true);
+		search.setSearchPool(engine.getSearchPool());
+		return new Pending(board, search, engine.submit(search));
+	}
+
+	/**
+	 * Waits for a search if necessary and writes its answer.
+	 */
+	private void writeAnswer(Pending pending, Writer output)
+			throws IOException, InterruptedException {
+
+		if (pending.search == null) {
+			output.write(pending.answer + "\n");
+			return;
+		}
+
+		try {
+			pending.future.get();
+		} catch (ExecutionException e) {
+			logger.log(Level.WARNING, "There was an error in the execution.\n"
+					+ e.toString());
+		}
+		Search search = pending.search;
+		int square = pending.board.toSquare(search.getBestMove());
+		SearchMetrics metrics = search.getMetrics();
+		output.write(Protocol.formatSquare(geometry, square) + " "
+				+ search.getBestValue() + " "
+				+ (metrics == null ? 0 : metrics.getDepth()) + " "
+				+ (metrics == null ? 0 : metrics.getNodes()) + "\n");
+
+	}
+
+	/**
+	 * Drops a partly written last line from a file of answers.
+	 * 
+	 * @param file
+	 *            - the file
+	 * @return - the number of complete lines left
+	 * @throws IOException
+	 *             - if the file cannot be read or written
+	 */
+	private static long truncateToLastLine(File file) throws IOException {
+
+		long lines = 0;
+		long length = 0; // Of the complete lines
+		InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			long position = 0;
+			int b;
+			while ((b = input.read()) >= 0) {
+				++position;
+				if (b == '\n') {
+					++lines;
+					length = position;
+				}
+			}
+		} finally {
+			input.close();
+		}
+
+		if (length < file.length()) {
+			RandomAccessFile answers = new RandomAccessFile(file, "rw");
+			try {
+				answers.setLength(length);
+			} finally {
+				answers.close();
+			}
+		}
+		return lines;
+
+	}
+
+	/**
+	 * Gets the player to move, given that X moves first.
+	 */
+	private static int getPlayerToMove(Board board) {
+		return board.getNumberOfMoves() % 2 == 0 ? Board.X : Board.O;
+	}
+
+	/**
+	 * A position read but not answered yet: either a search in progress or
+	 * an answer known without searching.
+	 */
+	private static final class Pending {
+
+		private final Board board;
+		private final Search search;
+		private final Future<Move> future;
+		private final String answer;
+
+		private Pending(Board board, Search search, Future<Move> future) {
+			this.board = board;
+			this.search = search;
+			this.future = future;
+			this.answer = null;
+		}
+
+		private Pending(String answer) {
+			this.board = null;
+			this.search = null;
+			this.future = null;
+			this.answer = answer;
+		}
+
+	}
+
+	/**
+	 * Reads positions one at a time.
+	 */
+	private abstract class PositionReader {
+
+		// The position read last, or null if it was invalid.
+		protected Board board;
+
+		/**
+		 * Reads the next position into board.
+		 * 
+		 * @return - false at the end of the input
+		 * @throws IOException
+		 *             - if reading fails
+		 */
+		abstract boolean next() throws IOException;
+
+	}
+
+	/**
+	 * Reads positions written as a character per square.
+	 */
+	private final class TextReader extends PositionReader {
+
+		private final BufferedReader input;
+
+		private TextReader(InputStream input) {
+			this.input = new BufferedReader(new InputStreamReader(input,
+					StandardCharsets.US_ASCII));
+		}
+
+		@Override
+		boolean next() throws IOException {
+
+			String line;
+			do {
+				line = input.readLine();
+				if (line == null) {
+					return false;
+				}
+				line = line.trim();
+			} while (line.isEmpty());
+
+			board = new Board(geometry);
+			int[] counts = new int[Board.O + 1];
+			int square = 0;
+			for (int i = 0; i < line.length(); ++i) {
+				char c = line.charAt(i);
+				if (c == '/') {
+					continue;
+				}
+				int player = c == 'x' ? Board.X : c == 'o' ? Board.O
+						: c == '.' ? Board.EMPTY : -1;
+				if (player < 0 || square == geometry.getSquares()) {
+					board = null;
+					return true;
+				}
+				if (player != Board.EMPTY) {
+					board.makeMove(square, player);
+					++counts[player];
+				}
+				++square;
+			}
+			// X moves first, so X has as many marks as O or one more.
+			int lead = counts[Board.X] - counts[Board.O];
+			if (square != geometry.getSquares() || lead < 0 || lead > 1) {
+				board = null;
+			}
+			return true;
+
+		}
+
+	}
+
+	/**
+	 * Reads positions written as binary records of moves.
+	 */
+	private final class BinaryReader extends PositionReader {
+
+		private final InputStream input;
+
+		private BinaryReader(InputStream input) {
+			this.input = new BufferedInputStream(input);
+		}
+
+		@Override
+		boolean next() throws IOException {
+
+			int moves = input.read();
+			if (moves < 0) {
+				return false;
+			}
+
+			board = new Board(geometry);
+			for (int i = 0; i < moves; ++i) {
+				int square = input.read();
+				if (square < 0) {
+					throw new EOFException("Truncated position record.");
+				}
+				// Read the whole record even if a move is invalid.
+				if (board != null) {
+					if (square >= geometry.getSquares()
+							|| board.getSquareValue(square) != Board.EMPTY
+							|| board.checkGameOver() != Board.INCOMPLETE) {
+						board = null;
+					} else {
+						board.makeMove(square, getPlayerToMove(board));
+					}
+				}
+			}
+			return true;
+
+		}
+
+	}
+
+}
@@ -1,9 +1,20 @@
 package tictactoebot;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Class to represent a game board.
+ * Class to represent a game board of any width and height, won by getting a
+ * number of pieces in a row (an m,n,k game; tic-tac-toe is 3,3,3). The
+ * position is stored as one bitboard per player, where square (x, y) maps to
+ * bit (y * width + x). Tables that only depend on the board's shape live in
+ * its BoardGeometry.
+ * 
+ * Each player also has a count of their pieces on every winning line, kept
+ * up to date by makeMove and unmakeMove. A move only touches the lines
+ * through its square, and a line reaching the win length means a win, so
+ * detecting the end of the game never rescans the board.
  * 
  * @author rongil
  *
@@ -17,16 +28,57 @@ public class Board {
 	// End game statuses.
 	public static final int INCOMPLETE = 10;
 	public static final int TIE = 11;
+	// Returned by getNextValidSquare when no valid move is left.
+	public static final int NO_SQUARE = -1;
+
 	// Instance details.
-	private int[][] board;
+	private final BoardGeometry geometry;
+	private final int words; // Number of 64-bit words per bitboard
+	private final long[] xBits;
+	private final long[] oBits;
 	private int numberOfMoves;
-	private HashSet<Move> validMoves;
+	// Pieces on each winning line, indexed by player ID and line.
+	private final int[][] lineCounts;
+	// Number of completed lines, indexed by player ID.
+	private final int[] completedLines;
+	// Zobrist hash of the squares under each symmetry, updated incrementally.
+	private final long[] hashes;
 
 	/**
-	 * Initializes a new empty board.
+	 * Initializes a new empty 3x3 board.
 	 */
 	public Board() {
-		this.board = new int[3][3];
+		this(BoardGeometry.STANDARD);
+	}
+
+	/**
+	 * Initializes a new empty board of the given shape.
+	 * 
+	 * @param width
+	 *            - the number of columns
+	 * @param height
+	 *            - the number of rows
+	 * @param winLength
+	 *            - the number in a row needed to win
+	 */
+	public Board(int width, int height, int winLength) {
+		this(BoardGeometry.of(width, height, winLength));
+	}
+
+	/**
+	 * Initializes a new empty board of the given shape.
+	 * 
+	 * @param geometry
+	 *            - the shape of the board
+	 */
+	public Board(BoardGeometry geometry) {
+		this.geometry = geometry;
+		words = geometry.getWords();
+		xBits = new long[words];
+		oBits = new long[words];
+		hashes = new long[geometry.getSymmetry().getCount()];
+		lineCounts = new int[O + 1][geometry.getLines().length];
+		completedLines = new int[O + 1];
 		createBoard();
 	}
 
@@ -37,7 +89,7 @@ public class Board {
 	 *            - The board to copy
 	 */
 	public Board(Board board) {
-		this.board = new int[3][3];
+		this(board.geometry);
 		copyBoard(board);
 	}
 
@@ -46,20 +98,13 @@ public class Board {
 	 */
 	private void createBoard() {
 
-		validMoves = new HashSet<Move>();
-		// Row loop
-		for (int i = 0; i < 3; ++i) {
-
-			// Column Loop
-			for (int j = 0; j < 3; ++j) {
-
-				// Set everything to empty
-				board[i][j] = EMPTY;
-				// Every move is valid
-				validMoves.add(new Move(i, j));
-
-			}
-		}
+		// Set everything to empty, which makes every move valid.
+		Arrays.fill(xBits, 0);
+		Arrays.fill(oBits, 0);
+		Arrays.fill(hashes, 0);
+		Arrays.fill(lineCounts[X], 0);
+		Arrays.fill(lineCounts[O], 0);
+		Arrays.fill(completedLines, 0);
 
 		// No moves currently.
 		numberOfMoves = 0;
@@ -75,20 +120,64 @@ public class Board {
 	 */
 	private void copyBoard(Board board) {
 
-		// Row loop
-		for (int i = 0; i < 3; ++i) {
+		// Copy the state of the board that was passed in.
+		System.arraycopy(board.xBits, 0, xBits, 0, words);
+		System.arraycopy(board.oBits, 0, oBits, 0, words);
+		System.arraycopy(board.hashes, 0, hashes, 0, hashes.length);
+		for (int player = X; player <= O; ++player) {
+			System.arraycopy(board.lineCounts[player], 0, lineCounts[player],
+					0, lineCounts[player].length);
+		}
+		System.arraycopy(board.completedLines, 0, completedLines, 0,
+				completedLines.length);
+		numberOfMoves = board.getNumberOfMoves();
+	}
 
-			// Column Loop
-			for (int j = 0; j < 3; ++j) {
+	/**
+	 * Gets the shape of the board.
+	 * 
+	 * @return - the board's geometry
+	 */
+	public BoardGeometry getGeometry() {
+		return geometry;
+	}
 
-				// Set everything to empty
-				this.board[i][j] = board.getPositionValue(i, j);
-			}
-		}
+	public int getWidth() {
+		return geometry.getWidth();
+	}
 
-		// Copy the state of the board that was passed in.
-		numberOfMoves = board.getNumberOfMoves();
-		validMoves = new HashSet<Move>(board.getValidMoves());
+	public int getHeight() {
+		return geometry.getHeight();
+	}
+
+	/**
+	 * Gets the number in a row needed to win.
+	 * 
+	 * @return - the win length
+	 */
+	public int getWinLength() {
+		return geometry.getWinLength();
+	}
+
+	/**
+	 * Converts a move to the index of its bit on the board.
+	 * 
+	 * @param move
+	 * @return - the square index
+	 */
+	public int toSquare(Move move) {
+		return geometry.toSquare(move.getX(), move.getY());
+	}
+
+	/**
+	 * Returns the shared move instance for a square index.
+	 * 
+	 * @param square
+	 *            - the square index
+	 * @return - the move playing on that square
+	 */
+	public Move getMove(int square) {
+		return geometry.getMove(square);
 	}
 
 	/**
@@ -99,7 +188,49 @@ public class Board {
 	 * @return - The value (O, X, or EMPTY) at the board position.
 	 */
 	public int getPositionValue(int i, int j) {
-		return board[i][j];
+		return getSquareValue(geometry.toSquare(i, j));
+	}
+
+	/**
+	 * Gets the value at the specified square index.
+	 * 
+	 * @param square
+	 *            - the square index
+	 * @return - The value (O, X, or EMPTY) at the square.
+	 */
+	public int getSquareValue(int square) {
+		int word = square / BoardGeometry.WORD_SIZE;
+		long bit = 1L << square; // Shift distance is taken modulo 64
+		if ((xBits[word] & bit) != 0) {
+			return X;
+		} else if ((oBits[word] & bit) != 0) {
+			return O;
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * Returns a player's bitboard. The array belongs to the board and must not
+	 * be modified.
+	 * 
+	 * @param player
+	 *            - ID of player (O or X)
+	 * @return - the player's squares, one bit per square
+	 */
+	long[] getBits(int player) {
+		return player == X ? xBits : oBits;
+	}
+
+	/**
+	 * Returns a player's piece count on every winning line. The array belongs
+	 * to the board and must not be modified.
+	 * 
+	 * @param player
+	 *            - ID of player (O or X)
+	 * @return - the player's pieces on each line, indexed like getLines
+	 */
+	int[] getLineCounts(int player) {
+		return lineCounts[player];
 	}
 
 	/**
@@ -112,14 +243,211 @@ public class Board {
 	}
 
 	/**
-	 * Returns a hash map of the current valid moves.
+	 * Gets the Zobrist hash of the position with the given player to move.
+	 * Positions with the same squares but a different player to move hash
+	 * differently, since the starting player is not fixed.
 	 * 
-	 * @return - Hash map containing the current valid moves
+	 * @param playerToMove
+	 *            - ID of the player to move (O or X)
+	 * @return - the hash of the position
 	 */
-	public HashSet<Move> getValidMoves() {
+	public long getHash(int playerToMove) {
+		return getSymmetricHash(Symmetry.IDENTITY, playerToMove);
+	}
+
+	/**
+	 * Gets the Zobrist hash of the position after applying a symmetry to it.
+	 * 
+	 * @param symmetry
+	 *            - the symmetry to apply
+	 * @param playerToMove
+	 *            - ID of the player to move (O or X)
+	 * @return - the hash of the transformed position
+	 */
+	public long getSymmetricHash(int symmetry, int playerToMove) {
+		long hash = hashes[symmetry];
+		return playerToMove == O ? hash ^ geometry.getZobristOToMove() : hash;
+	}
+
+	/**
+	 * Finds the symmetry that maps the position to its canonical form, which
+	 * is the transformed position with the smallest hash. Every rotation and
+	 * reflection of a position has the same canonical form.
+	 * 
+	 * @return - the symmetry producing the canonical position
+	 */
+	public int getCanonicalSymmetry() {
+		int canonical = Symmetry.IDENTITY;
+		for (int symmetry = 1; symmetry < hashes.length; ++symmetry) {
+			if (hashes[symmetry] < hashes[canonical]) {
+				canonical = symmetry;
+			}
+		}
+		return canonical;
+	}
+
+	/**
+	 * Returns the symmetries that leave the position unchanged.
+	 * 
+	 * @return - bitmask with bit i set if symmetry i maps the position to
+	 *         itself
+	 */
+	public int getSymmetries() {
+		Symmetry symmetry = geometry.getSymmetry();
+		int symmetries = 1 << Symmetry.IDENTITY;
+		for (int s = 1; s < symmetry.getCount(); ++s) {
+			boolean unchanged = true;
+			for (int square = 0; square < geometry.getSquares(); ++square) {
+				if (getSquareValue(square) != getSquareValue(symmetry
+						.transformSquare(s, square))) {
+					unchanged = false;
+					break;
+				}
+			}
+			if (unchanged) {
+				symmetries |= 1 << s;
+			}
+		}
+		return symmetries;
+	}
+
+	/**
+	 * Returns the empty squares of one word of the board, which are the valid
+	 * moves in that word.
+	 * 
+	 * @param word
+	 *            - the word index
+	 * @return - Bitmask with one bit set per valid move
+	 */
+	private long getValidMoveMask(int word) {
+		return ~(xBits[word] | oBits[word]) & geometry.getFullMask(word);
+	}
+
+	/**
+	 * Returns a list of the current valid moves.
+	 * 
+	 * @return - List containing the current valid moves
+	 */
+	public List<Move> getValidMoves() {
+		List<Move> validMoves = new ArrayList<Move>(geometry.getSquares()
+				- numberOfMoves);
+		for (int word = 0; word < words; ++word) {
+			long mask = getValidMoveMask(word);
+			while (mask != 0) {
+				validMoves.add(geometry.getMove(word * BoardGeometry.WORD_SIZE
+						+ Long.numberOfTrailingZeros(mask)));
+				mask &= mask - 1; // Clear the lowest set bit
+			}
+		}
 		return validMoves;
 	}
 
+	/**
+	 * Writes the squares of the current valid moves into an array, in the
+	 * same order as getValidMoves, without allocating.
+	 * 
+	 * @param squares
+	 *            - array with room for every square of the board
+	 * @return - the number of valid moves written
+	 */
+	public int getValidSquares(int[] squares) {
+		int count = 0;
+		for (int word = 0; word < words; ++word) {
+			long mask = getValidMoveMask(word);
+			while (mask != 0) {
+				squares[count++] = word * BoardGeometry.WORD_SIZE
+						+ Long.numberOfTrailingZeros(mask);
+				mask &= mask - 1; // Clear the lowest set bit
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the next valid move at or after a square, so the valid moves can
+	 * be visited in order without allocating:
+	 * 
+	 * <pre>
+	 * for (int s = board.getNextValidSquare(0); s != NO_SQUARE; s = board
+	 * 		.getNextValidSquare(s + 1))
+	 * </pre>
+	 * 
+	 * @param square
+	 *            - the square index to start from
+	 * @return - the lowest empty square at or after it, or NO_SQUARE if none
+	 */
+	public int getNextValidSquare(int square) {
+		int word = square / BoardGeometry.WORD_SIZE;
+		if (word >= words) {
+			return NO_SQUARE;
+		}
+		// Shifts only use the low six bits, so this masks below the square.
+		long mask = getValidMoveMask(word) & (-1L << square);
+		while (mask == 0) {
+			if (++word == words) {
+				return NO_SQUARE;
+			}
+			mask = getValidMoveMask(word);
+		}
+		return word * BoardGeometry.WORD_SIZE
+				+ Long.numberOfTrailingZeros(mask);
+	}
+
+	/**
+	 * Returns the valid moves with symmetric duplicates removed. Of all moves
+	 * that the position's symmetries map onto each other, only the one on the
+	 * lowest square is kept, since the rest lead to equivalent positions.
+	 * 
+	 * @return - List containing one valid move per class of equivalent moves
+	 */
+	public List<Move> getDistinctValidMoves() {
+		int[] squares = new int[geometry.getSquares() - numberOfMoves];
+		int count = getDistinctValidSquares(squares);
+		List<Move> distinctMoves = new ArrayList<Move>(count);
+		for (int i = 0; i < count; ++i) {
+			distinctMoves.add(geometry.getMove(squares[i]));
+		}
+		return distinctMoves;
+	}
+
+	/**
+	 * Writes the squares of the distinct valid moves (see
+	 * getDistinctValidMoves) into an array, in ascending order, without
+	 * allocating.
+	 * 
+	 * @param squares
+	 *            - array with room for every valid move
+	 * @return - the number of distinct valid moves written
+	 */
+	public int getDistinctValidSquares(int[] squares) {
+		int count = getValidSquares(squares);
+		int symmetries = getSymmetries() & ~(1 << Symmetry.IDENTITY);
+		if (symmetries == 0) {
+			return count;
+		}
+
+		Symmetry symmetry = geometry.getSymmetry();
+		int distinctCount = 0;
+		for (int i = 0; i < count; ++i) {
+			int square = squares[i];
+
+			// Skip the move if a symmetry maps it to a lower square.
+			boolean distinct = true;
+			for (int s = symmetries; s != 0; s &= s - 1) {
+				int transformed = symmetry.transformSquare(
+						Integer.numberOfTrailingZeros(s), square);
+				if (transformed < square) {
+					distinct = false;
+					break;
+				}
+			}
+			if (distinct) {
+				squares[distinctCount++] = square;
+			}
+		}
+		return distinctCount;
+	}
+
 	/**
 	 * Makes a move by changing the corresponding square on the board.
 	 * 
@@ -132,17 +460,103 @@ public class Board {
 	public boolean makeMove(Move move, int player) {
 
 		// Check to see if the move is valid.
-		if (!validMoves.contains(move)) {
+		int x = move.getX();
+		int y = move.getY();
+		if (!geometry.contains(x, y)
+				|| getSquareValue(geometry.toSquare(x, y)) != EMPTY) {
 			System.out.println("Move is not valid.");
 			return false;
 		}
 
-		board[move.getX()][move.getY()] = player;
-		validMoves.remove(move);
-		++numberOfMoves;
+		makeMove(geometry.toSquare(x, y), player);
 		return true;
 	}
 
+	/**
+	 * Makes a move on a square without checking it, for searches that only
+	 * generate valid moves. Nothing is allocated.
+	 * 
+	 * @param square
+	 *            - the square index, which must be empty
+	 * @param player
+	 *            - ID of player (O or X)
+	 */
+	public void makeMove(int square, int player) {
+
+		int word = square / BoardGeometry.WORD_SIZE;
+		if (player == X) {
+			xBits[word] |= 1L << square;
+		} else {
+			oBits[word] |= 1L << square;
+		}
+		updateHashes(player, square);
+		++numberOfMoves;
+
+		// Count the piece on each line through the square.
+		int[] counts = lineCounts[player];
+		int winLength = geometry.getWinLength();
+		for (int line : geometry.getSquareLines(square)) {
+			if (++counts[line] == winLength) {
+				++completedLines[player];
+			}
+		}
+	}
+
+	/**
+	 * Takes back a move previously played with makeMove. Along with makeMove,
+	 * this lets a search explore a position on a single board instance instead
+	 * of copying the board for every child.
+	 * 
+	 * @param move
+	 *            - the move to be taken back
+	 */
+	public void unmakeMove(Move move) {
+		unmakeMove(toSquare(move));
+	}
+
+	/**
+	 * Takes back a move previously played on a square.
+	 * 
+	 * @param square
+	 *            - the square index of the move to be taken back
+	 */
+	public void unmakeMove(int square) {
+
+		int word = square / BoardGeometry.WORD_SIZE;
+		long bit = 1L << square;
+		int player = (xBits[word] & bit) != 0 ? X : O;
+		updateHashes(player, square);
+		xBits[word] &= ~bit;
+		oBits[word] &= ~bit;
+		--numberOfMoves;
+
+		// Remove the piece from each line through the square.
+		int[] counts = lineCounts[player];
+		int winLength = geometry.getWinLength();
+		for (int line : geometry.getSquareLines(square)) {
+			if (counts[line]-- == winLength) {
+				--completedLines[player];
+			}
+		}
+	}
+
+	/**
+	 * Toggles a player's piece on a square in the hash of every symmetric
+	 * version of the position.
+	 * 
+	 * @param player
+	 *            - ID of player (O or X)
+	 * @param square
+	 *            - the square index
+	 */
+	private void updateHashes(int player, int square) {
+		Symmetry symmetry = geometry.getSymmetry();
+		for (int s = 0; s < hashes.length; ++s) {
+			hashes[s] ^= geometry.getZobristKey(player,
+					symmetry.transformSquare(s, square));
+		}
+	}
+
 	/**
 	 * Makes a move on a new board instance and returns the new instance.
 	 * 
@@ -164,32 +578,15 @@ public class Board {
 	 */
 	public int checkGameOver() {
 
-		// NOTE: By comparing positions between themselves and making sure they
-		// are not empty, the player does not need to be passed in as an
-		// argument.
-
-		// Loop through all values.
-		for (int i = 0; i < 3; ++i) {
-			// Split conditionals to allow distinguishing the type of win.
-			// Check row win.
-			if (board[i][0] != EMPTY && board[i][0] == board[i][1]
-					&& board[i][1] == board[i][2]) {
-				return board[i][0];
-				// Check column win.
-			} else if (board[0][i] != EMPTY && board[0][i] == board[1][i]
-					&& board[1][i] == board[2][i]) {
-				return board[0][i];
-			}
-		}
-
-		// Check diagonals.
-		if (board[1][1] != EMPTY
-				&& ((board[0][0] == board[1][1] && board[1][1] == board[2][2]) || (board[2][0] == board[1][1] && board[1][1] == board[0][2]))) {
-			return board[1][1];
+		// A completed line was counted when its last piece was played.
+		if (completedLines[X] > 0) {
+			return X;
+		} else if (completedLines[O] > 0) {
+			return O;
 		}
 
 		// Check for a tie.
-		if (numberOfMoves == 9) {
+		if (numberOfMoves == geometry.getSquares()) {
 			return TIE;
 		}
 
@@ -198,6 +595,20 @@ public class Board {
 
 	}
 
+	/**
+	 * Gets the number of a player's pieces on a winning line, as counted
+	 * incrementally by makeMove and unmakeMove.
+	 * 
+	 * @param player
+	 *            - ID of player (O or X)
+	 * @param line
+	 *            - index of the line in the geometry's lines
+	 * @return - the number of the player's pieces on the line
+	 */
+	int getLineCount(int player, int line) {
+		return lineCounts[player][line];
+	}
+
 	/**
 	 * Clears the board.
 	 */
@@ -210,29 +621,35 @@ public class Board {
 	 */
 	public void showBoard() {
 
+		int width = getWidth();
+		StringBuilder border = new StringBuilder("-");
+		for (int x = 0; x < width; ++x) {
+			border.append("----");
+		}
+
 		System.out.println();
 		// Top border and axis
 		System.out.print(" ");
-		for (int x = 1; x < 4; ++x) {
-			System.out.print(" " + Integer.toString(x) + "  ");
+		for (int x = 1; x <= width; ++x) {
+			System.out.print((x < 10 ? " " : "") + Integer.toString(x) + "  ");
 		}
 		System.out.println();
-		System.out.println("-------------");
+		System.out.println(border);
 
 		// Row loop
-		for (int i = 0; i < 3; ++i) {
+		for (int i = 0; i < getHeight(); ++i) {
 
 			// Left border
 			System.out.print('|');
 
 			// Column Loop
-			for (int j = 0; j < 3; ++j) {
+			for (int j = 0; j < width; ++j) {
 
 				// Values and right borders
 				String value;
 				// NOTE: The i, j values are printed in reverse compared to how
 				// they are stored.
-				switch (board[j][i]) {
+				switch (getPositionValue(j, i)) {
 				case EMPTY:
 					value = "   ";
 					break;
@@ -251,7 +668,7 @@ public class Board {
 			// Right axis
 			System.out.println(" " + Integer.toString(i + 1));
 			// Bottom borders
-			System.out.println("-------------");
+			System.out.println(border);
 
 		}
 
@@ -263,39 +680,39 @@ public class Board {
 	 */
 	public static final class Move {
 
-		private Integer x;
-		private Integer y;
+		private final int x;
+		private final int y;
 
 		public Move(int x, int y) {
 			this.x = x;
 			this.y = y;
 		}
 
-		public Integer getX() {
+		public int getX() {
 			return x;
 		}
 
-		public Integer getY() {
+		public int getY() {
 			return y;
 		}
 
 		@Override
 		public boolean equals(Object object) {
-			return (object instanceof Move)
-					&& (((Move) object).getX().equals(this.x))
-					&& (((Move) object).getY().equals(this.y));
+			return (object instanceof Move) && (((Move) object).x == this.x)
+					&& (((Move) object).y == this.y);
 		}
 
 		@Override
 		public int hashCode() {
-			return (10 * x.hashCode()) + y.hashCode();
+			// Distinct for every move, as coordinates are below 31.
+			return (31 * x) + y;
 		}
 
 		@Override
 		public String toString() {
-			return "(" + x.toString() + ", " + y.toString() + ")";
+			return "(" + x + ", " + y + ")";
 		}
 
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,305 @@
+package tictactoebot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import tictactoebot.Board.Move;
+
+/**
+ * Everything about a board that depends only on its shape: the width, height
+ * and number in a row needed to win (k), plus tables derived from them once
+ * and shared by every board of that shape. These are the winning lines (and
+ * the lines through each square), the symmetries, the Zobrist keys, the
+ * evaluation weight of each square, and the shared move instances.
+ *
+ * Squares are numbered row by row, so square (x, y) has index y * width + x.
+ * Boards store one bit per square in 64-bit words; boards of up to 64 squares
+ * (including the standard 3x3 board) fit in a single word.
+ *
+ * @author rongil
+ *
+ */
+public final class BoardGeometry {
+
+	// Largest supported width or height.
+	public static final int MAX_SIZE = 15;
+
+	// Bits per word of a board's bitboards.
+	public static final int WORD_SIZE = 64;
+
+	// Geometries already built, keyed by their dimensions.
+	private static final ConcurrentHashMap<Integer, BoardGeometry> CACHE =
+			new ConcurrentHashMap<Integer, BoardGeometry>();
+
+	// Hand-tuned weights of the standard board: corners and the center.
+	private static final int[] STANDARD_WEIGHTS = { 2, 0, 2, 0, 10, 0, 2, 0,
+			2 };
+
+	// Directions of winning lines: across, down, and both diagonals.
+	private static final int[][] DIRECTIONS = { { 1, 0 }, { 0, 1 }, { 1, 1 },
+			{ 1, -1 } };
+
+	// The classic 3x3, three in a row board. Declared after the tables it is
+	// built from, so they are initialized first.
+	public static final BoardGeometry STANDARD = of(3, 3, 3);
+
+	private final int width;
+	private final int height;
+	private final int winLength;
+	private final int squares;
+	private final int words;
+
+	// Mask of the squares that exist in each word.
+	private final long[] fullMasks;
+	// Squares of every winning line, and the lines through each square.
+	private final int[][] lines;
+	private final int[][] squareLines;
+	private final int[] squareWeights;
+	private final Symmetry symmetry;
+	// Zobrist keys, indexed by player ID and square, plus the key XORed in
+	// when O is the player to move.
+	private final long[][] zobristKeys;
+	private final long zobristOToMove;
+	// Shared move instances, indexed by square.
+	private final Move[] moves;
+
+	/**
+	 * Returns the geometry of a board, building it on first use.
+	 *
+	 * @param width
+	 *            - the number of columns (1 to MAX_SIZE)
+	 * @param height
+	 *            - the number of rows (1 to MAX_SIZE)
+	 * @param winLength
+	 *            - the number in a row needed to win
+	 * @return - the shared geometry
+	 */
+	public static BoardGeometry of(int width, int height, int winLength) {
+
+		if (width < 1 || width > MAX_SIZE || height < 1 || height > MAX_SIZE) {
+			throw new IllegalArgumentException("Board must be between 1x1 and "
+					+ MAX_SIZE + "x" + MAX_SIZE + ": " + width + "x" + height);
+		}
+		if (winLength < 1 || winLength > Math.max(width, height)) {
+			throw new IllegalArgumentException("Cannot get " + winLength
+					+ " in a row on a " + width + "x" + height + " board.");
+		}
+
+		Integer key = (width << 16) | (height << 8) | winLength;
+		BoardGeometry geometry = CACHE.get(key);
+		if (geometry == null) {
+			geometry = new BoardGeometry(width, height, winLength);
+			BoardGeometry existing = CACHE.putIfAbsent(key, geometry);
+			if (existing != null) {
+				geometry = existing;
+			}
+		}
+		return geometry;
+
+	}
+
+	private BoardGeometry(int width, int height, int winLength) {
+
+		this.width = width;
+		this.height = height;
+		this.winLength = winLength;
+		squares = width * height;
+		words = (squares + WORD_SIZE - 1) / WORD_SIZE;
+
+		fullMasks = new long[words];
+		for (int square = 0; square < squares; ++square) {
+			fullMasks[square / WORD_SIZE] |= 1L << square;
+		}
+
+		// Every run of winLength squares in each direction is a line.
+		List<int[]> lineList = new ArrayList<int[]>();
+		for (int[] direction : DIRECTIONS) {
+			for (int y = 0; y < height; ++y) {
+				for (int x = 0; x < width; ++x) {
+					int endX = x + direction[0] * (winLength - 1);
+					int endY = y + direction[1] * (winLength - 1);
+					if (endX < 0 || endX >= width || endY < 0 || endY >= height
+							|| (winLength == 1 && direction != DIRECTIONS[0])) {
+						continue;
+					}
+					int[] line = new int[winLength];
+					for (int i = 0; i < winLength; ++i) {
+						line[i] = (y + direction[1] * i) * width + x
+								+ direction[0] * i;
+					}
+					lineList.add(line);
+				}
+			}
+		}
+		lines = lineList.toArray(new int[lineList.size()][]);
+
+		// Index the lines by the squares they pass through.
+		int[] lineCounts = new int[squares];
+		for (int[] line : lines) {
+			for (int square : line) {
+				++lineCounts[square];
+			}
+		}
+		squareLines = new int[squares][];
+		for (int square = 0; square < squares; ++square) {
+			squareLines[square] = new int[lineCounts[square]];
+		}
+		for (int i = 0; i < lines.length; ++i) {
+			for (int square : lines[i]) {
+				squareLines[square][--lineCounts[square]] = i;
+			}
+		}
+
+		// Squares on more lines are worth more, except on the standard board,
+		// which keeps its original corner and center weights.
+		if (width == 3 && height == 3 && winLength == 3) {
+			squareWeights = STANDARD_WEIGHTS.clone();
+		} else {
+			squareWeights = new int[squares];
+			for (int[] line : lines) {
+				for (int square : line) {
+					++squareWeights[square];
+				}
+			}
+		}
+
+		symmetry = new Symmetry(width, height);
+
+		// A fixed seed keeps hashes reproducible.
+		Random random = new Random(0x5EED);
+		zobristKeys = new long[Board.O + 1][squares];
+		for (int square = 0; square < squares; ++square) {
+			zobristKeys[Board.X][square] = random.nextLong();
+			zobristKeys[Board.O][square] = random.nextLong();
+		}
+		zobristOToMove = random.nextLong();
+
+		moves = new Move[squares];
+		for (int square = 0; square < squares; ++square) {
+			moves[square] = new Move(square % width, square / width);
+		}
+
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return - the number in a row needed to win
+	 */
+	public int getWinLength() {
+		return winLength;
+	}
+
+	/**
+	 * @return - the number of squares on the board
+	 */
+	public int getSquares() {
+		return squares;
+	}
+
+	/**
+	 * @return - the number of 64-bit words in each of a board's bitboards
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * @param word
+	 *            - the word index
+	 * @return - the mask of squares that exist in the word
+	 */
+	public long getFullMask(int word) {
+		return fullMasks[word];
+	}
+
+	/**
+	 * @return - the squares of every winning line
+	 */
+	public int[][] getLines() {
+		return lines;
+	}
+
+	/**
+	 * @param square
+	 *            - the square index
+	 * @return - the indices (into getLines) of the lines through the square
+	 */
+	public int[] getSquareLines(int square) {
+		return squareLines[square];
+	}
+
+	/**
+	 * @return - the evaluation weight of each square
+	 */
+	public int[] getSquareWeights() {
+		return squareWeights;
+	}
+
+	public Symmetry getSymmetry() {
+		return symmetry;
+	}
+
+	/**
+	 * @param player
+	 *            - ID of player (O or X)
+	 * @param square
+	 *            - the square index
+	 * @return - the Zobrist key of the player's piece on the square
+	 */
+	public long getZobristKey(int player, int square) {
+		return zobristKeys[player][square];
+	}
+
+	/**
+	 * @return - the Zobrist key XORed in when O is the player to move
+	 */
+	public long getZobristOToMove() {
+		return zobristOToMove;
+	}
+
+	/**
+	 * @param square
+	 *            - the square index
+	 * @return - the shared move instance playing on the square
+	 */
+	public Move getMove(int square) {
+		return moves[square];
+	}
+
+	/**
+	 * Converts a pair of coordinates to a square index.
+	 *
+	 * @param x
+	 * @param y
+	 * @return - the square index
+	 */
+	public int toSquare(int x, int y) {
+		return y * width + x;
+	}
+
+	/**
+	 * Checks whether a pair of coordinates is on the board.
+	 *
+	 * @param x
+	 * @param y
+	 * @return - true if the coordinates are on the board
+	 */
+	public boolean contains(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+
+	@Override
+	public String toString() {
+		return width + "x" + height + " (" + winLength + " in a row)";
+	}
+
+}
@@ -0,0 +1,254 @@
+package tictactoebot;
+
+import java.io.Closeable;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tictactoebot.Board.Move;
+
+/**
+ * Long-lived pool of search threads shared by computer players, so that moves
+ * do not pay for creating and tearing down a thread each time and run on
+ * threads whose code is already JIT-compiled.
+ * 
+ * An engine must be started before searches are submitted and closed when it
+ * is no longer needed. A process-wide engine, started on first use, is
+ * available through getShared.
+ * 
+ * Besides the threads running whole searches, an engine can own a fork/join
+ * pool that individual searches use to search root moves in parallel.
+ * 
+ * @author rongil
+ *
+ */
+public class Engine implements Closeable {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Searches run during warm-up.
+	private static final int WARM_UP_SEARCHES = 500;
+
+	// Process-wide engine (created on first use).
+	private static Engine shared;
+
+	private final int threads;
+	private final int searchThreads;
+	private ExecutorService executor;
+	private ForkJoinPool searchPool;
+
+	/**
+	 * Creates an engine with one search thread per available processor, with
+	 * each search running on a single thread.
+	 */
+	public Engine() {
+		this(Runtime.getRuntime().availableProcessors(), 1);
+	}
+
+	/**
+	 * Creates an engine with the given number of search threads.
+	 * 
+	 * @param threads
+	 *            - the number of searches that can run at the same time
+	 * @param searchThreads
+	 *            - the number of threads a single search may use (1 for a
+	 *            single-threaded, deterministic search)
+	 */
+	public Engine(int threads, int searchThreads) {
+		if (threads < 1 || searchThreads < 1) {
+			throw new IllegalArgumentException(
+					"An engine needs at least one thread: " + threads + ", "
+							+ searchThreads);
+		}
+		this.threads = threads;
+		this.searchThreads = searchThreads;
+	}
+
+	/**
+	 * Returns the process-wide engine, starting it if necessary.
+	 * 
+	 * @return - the shared engine
+	 */
+	public static synchronized Engine getShared() {
+		if (shared == null) {
+			shared = new Engine();
+			shared.start();
+		}
+		return shared;
+	}
+
+	/**
+	 * Replaces the process-wide engine, closing the previous one. The new
+	 * engine must already be started.
+	 * 
+	 * @param engine
+	 *            - the engine to share
+	 */
+	public static synchronized void setShared(Engine engine) {
+		if (shared != null && shared != engine) {
+			shared.close();
+		}
+		shared = engine;
+	}
+
+	/**
+	 * Starts the search threads.
+	 */
+	public synchronized void start() {
+		if (executor != null) {
+			throw new IllegalStateException("The engine is already running.");
+		}
+
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "engine-"
+						+ threadNumber.getAndIncrement());
+				// Never keep the process alive just for idle search threads.
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		if (searchThreads > 1) {
+			searchPool = new ForkJoinPool(searchThreads);
+		}
+		logger.log(Level.INFO, "Engine started with " + threads
+				+ " thread(s), " + searchThreads + " per search.");
+	}
+
+	/**
+	 * Runs throwaway searches on random positions so the search code is
+	 * compiled before the first real move is requested. Blocks until done.
+	 * Only worth it before games whose first moves are timed; the searches
+	 * are not added to EngineMetrics.
+	 */
+	public void warmUp() {
+
+		Random random = new Random(0);
+		int[] players = { Board.X, Board.O };
+		TranspositionTable transpositionTable = new TranspositionTable();
+		long startTime = System.nanoTime();
+
+		for (int i = 0; i < WARM_UP_SEARCHES; ++i) {
+			// Play a few random moves, then search the resulting position.
+			Board board = new Board();
+			int[] squares = new int[board.getGeometry().getSquares()];
+			int turn = random.nextInt(2);
+			int randomMoves = random.nextInt(6);
+			for (int j = 0; j < randomMoves
+					&& board.checkGameOver() == Board.INCOMPLETE; ++j) {
+				int count = board.getValidSquares(squares);
+				board.makeMove(squares[random.nextInt(count)], players[turn]);
+				turn = 1 - turn;
+			}
+			if (board.checkGameOver() != Board.INCOMPLETE) {
+				continue;
+			}
+
+			// Start each search from scratch so it does real work.
+			transpositionTable.clear();
+			Search search = new Search(board, players[turn],
+					transpositionTable);
+			search.setQuiet(true);
+			// Throwaway searches would skew the reported search times.
+			search.setRecorded(false);
+			search.setSearchPool(getSearchPool());
+			try {
+				submit(search).get();
+			} catch (Exception e) {
+				logger.log(Level.WARNING, "Warm-up search failed.\n" + e);
+				return;
+			}
+		}
+
+		logger.log(Level.INFO, "Engine warmed up in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+				+ " ms.");
+
+	}
+
+	/**
+	 * Queues a search on the engine's threads.
+	 * 
+	 * @param search
+	 *            - the search to run
+	 * @return - the future result of the search
+	 */
+	public synchronized Future<Move> submit(Search search) {
+		if (executor == null) {
+			throw new IllegalStateException("The engine is not running.");
+		}
+		return executor.submit(search);
+	}
+
+	/**
+	 * Queues a search on the engine's threads, completing a future when it
+	 * finishes instead of leaving a thread to wait for it. Actions chained to
+	 * the future run on the engine thread that ran the search.
+	 * 
+	 * @param search
+	 *            - the search to run
+	 * @return - the future result of the search
+	 */
+	public synchronized CompletableFuture<Move> submitAsync(
+			final Search search) {
+		if (executor == null) {
+			throw new IllegalStateException("The engine is not running.");
+		}
+		final CompletableFuture<Move> result = new CompletableFuture<Move>();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result.complete(search.call());
+				} catch (Exception e) {
+					result.completeExceptionally(e);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns the number of searches that can run at the same time.
+	 * 
+	 * @return - the number of engine threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Returns the pool searches use to search root moves in parallel.
+	 * 
+	 * @return - the pool, or null if searches are single-threaded
+	 */
+	public synchronized ForkJoinPool getSearchPool() {
+		return searchPool;
+	}
+
+	/**
+	 * Stops the search threads, interrupting any search still running.
+	 */
+	@Override
+	public synchronized void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (searchPool != null) {
+			searchPool.shutdownNow();
+			searchPool = null;
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package tictactoebot;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide statistics of every finished search, published as a JMX MBean
+ * so slow moves can be explained from a running process. Searches report here
+ * once, when they finish, so the search itself never waits on this object.
+ * 
+ * @author rongil
+ *
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Name the metrics are registered under.
+	public static final String OBJECT_NAME = "tictactoebot:type=EngineMetrics";
+
+	// Process-wide metrics (registered on first use).
+	private static EngineMetrics shared;
+
+	private long searches;
+	private long totalNodes;
+	private long totalTime; // Microseconds
+	private long maxTime; // Microseconds
+	private SearchMetrics last;
+
+	/**
+	 * Returns the process-wide metrics, registering them with the platform
+	 * MBean server on first use.
+	 * 
+	 * @return - the shared metrics
+	 */
+	public static synchronized EngineMetrics getShared() {
+		if (shared == null) {
+			shared = new EngineMetrics();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(
+						shared, new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				// The metrics still work, just not over JMX.
+				shared.logger.log(Level.WARNING,
+						"Could not register engine metrics.\n" + e);
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * Adds the metrics of a finished search.
+	 * 
+	 * @param metrics
+	 *            - the search's metrics
+	 */
+	public synchronized void record(SearchMetrics metrics) {
+		++searches;
+		totalNodes += metrics.getNodes();
+		totalTime += metrics.getElapsedTime();
+		maxTime = Math.max(maxTime, metrics.getElapsedTime());
+		last = metrics;
+	}
+
+	/**
+	 * @return - the metrics of the last search, or null if there was none
+	 */
+	public synchronized SearchMetrics getLastSearch() {
+		return last;
+	}
+
+	@Override
+	public synchronized long getSearches() {
+		return searches;
+	}
+
+	@Override
+	public synchronized long getTotalNodes() {
+		return totalNodes;
+	}
+
+	@Override
+	public synchronized long getNodesPerSecond() {
+		return totalTime == 0 ? 0 : totalNodes
+				* TimeUnit.SECONDS.toMicros(1) / totalTime;
+	}
+
+	@Override
+	public synchronized long getMaxSearchTime() {
+		return TimeUnit.MICROSECONDS.toMillis(maxTime);
+	}
+
+	@Override
+	public synchronized String getLastSearchType() {
+		return last == null ? null
+				: Search.SEARCH_TYPE_NAMES[last.getSearchType()];
+	}
+
+	@Override
+	public synchronized long getLastSearchTime() {
+		return last == null ? 0 : TimeUnit.MICROSECONDS.toMillis(last
+				.getElapsedTime());
+	}
+
+	@Override
+	public synchronized long getLastNodes() {
+		return last == null ? 0 : last.getNodes();
+	}
+
+	@Override
+	public synchronized long getLastNodesPerSecond() {
+		return last == null ? 0 : last.getNodesPerSecond();
+	}
+
+	@Override
+	public synchronized int getLastDepth() {
+		return last == null ? 0 : last.getDepth();
+	}
+
+	@Override
+	public synchronized long[] getLastIterationTimes() {
+		return last == null ? new long[0] : last.getIterationTimes();
+	}
+
+	@Override
+	public synchronized double getLastFirstMoveCutoffRate() {
+		return last == null ? 0 : last.getFirstMoveCutoffRate();
+	}
+
+	@Override
+	public synchronized double getLastTranspositionHitRate() {
+		return last == null ? 0 : last.getTranspositionHitRate();
+	}
+
+	@Override
+	public synchronized void reset() {
+		searches = 0;
+		totalNodes = 0;
+		totalTime = 0;
+		maxTime = 0;
+		last = null;
+	}
+
+}
@@ -0,0 +1,80 @@
+package tictactoebot;
+
+/**
+ * Management interface of EngineMetrics, exposing search statistics over JMX
+ * (for example in JConsole, under tictactoebot:type=EngineMetrics).
+ * 
+ * @author rongil
+ *
+ */
+public interface EngineMetricsMBean {
+
+	/**
+	 * @return - the number of searches finished
+	 */
+	long getSearches();
+
+	/**
+	 * @return - the nodes searched by all searches
+	 */
+	long getTotalNodes();
+
+	/**
+	 * @return - the nodes searched per second over all searches
+	 */
+	long getNodesPerSecond();
+
+	/**
+	 * @return - the time of the slowest search, in milliseconds
+	 */
+	long getMaxSearchTime();
+
+	/**
+	 * @return - the search type of the last search
+	 */
+	String getLastSearchType();
+
+	/**
+	 * @return - the time of the last search, in milliseconds
+	 */
+	long getLastSearchTime();
+
+	/**
+	 * @return - the nodes searched by the last search
+	 */
+	long getLastNodes();
+
+	/**
+	 * @return - the nodes searched per second by the last search
+	 */
+	long getLastNodesPerSecond();
+
+	/**
+	 * @return - the depth of the last search's last completed iteration
+	 */
+	int getLastDepth();
+
+	/**
+	 * @return - the time of each of the last search's iterations, in
+	 *         microseconds
+	 */
+	long[] getLastIterationTimes();
+
+	/**
+	 * @return - the fraction of the last search's cutoffs caused by the first
+	 *         move searched
+	 */
+	double getLastFirstMoveCutoffRate();
+
+	/**
+	 * @return - the fraction of the last search's transposition table lookups
+	 *         that found an entry
+	 */
+	double getLastTranspositionHitRate();
+
+	/**
+	 * Clears all statistics.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,343 @@
+package tictactoebot;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tictactoebot.Board.Move;
+
+/**
+ * One game between two players, run as a state machine instead of a loop
+ * owning a thread. The game asks the player to move for a move and goes on
+ * when the move arrives, on whichever thread delivers it; while it waits, the
+ * game holds no thread at all, so thousands of games can be in progress at
+ * once. Human and computer players plug in the same way, through
+ * Player.requestMove.
+ * 
+ * A game starts NEW, is WAITING for a move until it is OVER, and can be
+ * ABORTED at any point. Invalid moves are asked for again. Once over or
+ * aborted, the game can be logged as a GameRecord.
+ * 
+ * @author rongil
+ *
+ */
+public class Game {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// States
+	public static final int NEW = 0;
+	public static final int WAITING = 1;
+	public static final int OVER = 2;
+	public static final int ABORTED = 3;
+
+	private final long id;
+	private final Player[] players;
+	private final Board board;
+	// Completed with the result once the game is over.
+	private final CompletableFuture<Integer> outcome =
+			new CompletableFuture<Integer>();
+	// Whether the board and turns are printed as the game goes on.
+	private boolean verbose;
+	// Where the game is logged once it ends (null if it is not).
+	private GameRecordWriter recordWriter;
+	private int state = NEW;
+	private int turn; // Index of the player to move
+	private int result = Board.INCOMPLETE;
+	private volatile long lastActivityTime = System.nanoTime();
+	// Timings
+	private long startTime; // Milliseconds since the epoch
+	private long startNanoTime; // System.nanoTime()
+	private long requestTime; // When the last move was asked for
+	private final long[] thinkingTimes = new long[2]; // Nanoseconds
+	// Squares played, in order.
+	private final int[] squares;
+	private int firstPlayer;
+
+	/**
+	 * Creates a game that has not started yet.
+	 * 
+	 * @param id
+	 *            - the game's ID
+	 * @param playerOne
+	 *            - one player
+	 * @param playerTwo
+	 *            - the other player
+	 * @param board
+	 *            - the board to play on (owned by the game from now on)
+	 */
+	public Game(long id, Player playerOne, Player playerTwo, Board board) {
+		this.id = id;
+		this.players = new Player[] { playerOne, playerTwo };
+		this.board = board;
+		this.squares = new int[board.getGeometry().getSquares()];
+	}
+
+	/**
+	 * Sets whether the board and whose turn it is are printed as the game
+	 * goes on. Must be called before the game starts.
+	 * 
+	 * @param verbose
+	 *            - true to print (false by default)
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Sets where the game is logged once it is over or aborted. Must be
+	 * called before the game starts, on an empty board, since the record
+	 * holds only the moves to replay from the empty board.
+	 * 
+	 * @param recordWriter
+	 *            - the writer, or null to log nothing (by default)
+	 */
+	public void setRecordWriter(GameRecordWriter recordWriter) {
+		this.recordWriter = recordWriter;
+	}
+
+	/**
+	 * Starts the game by asking the first player for a move.
+	 * 
+	 * @param firstTurn
+	 *            - 0 if playerOne moves first, 1 if playerTwo does
+	 * @return - the future result: Board.X, Board.O or Board.TIE, or
+	 *         cancelled if the game is aborted
+	 */
+	public synchronized CompletableFuture<Integer> start(int firstTurn) {
+		if (state != NEW) {
+			throw new IllegalStateException("The game has already started.");
+		}
+		if (verbose) {
+			board.showBoard();
+		}
+		turn = firstTurn;
+		firstPlayer = players[firstTurn].getPlayerID();
+		startTime = System.currentTimeMillis();
+		startNanoTime = System.nanoTime();
+		state = WAITING;
+		requestMove();
+		return outcome;
+	}
+
+	/**
+	 * Ends the game without a result, abandoning the move being waited for.
+	 * Does nothing if the game is already over.
+	 */
+	public void abort() {
+		Player waitingFor;
+		synchronized (this) {
+			if (state == OVER || state == ABORTED) {
+				return;
+			}
+			state = ABORTED;
+			waitingFor = players[turn];
+			writeRecord();
+		}
+		// Cancelled outside the lock, since cancelling may complete the
+		// move on this thread.
+		waitingFor.cancelMove();
+		outcome.cancel(false);
+	}
+
+	/**
+	 * Asks the player to move for a move, applying moves that are already
+	 * known (such as tablebase moves) at once. Called with the lock held.
+	 */
+	private void requestMove() {
+		while (state == WAITING) {
+			final Player player = players[turn];
+			if (verbose) {
+				player.printPlayerTurn();
+			}
+			requestTime = System.nanoTime();
+			CompletableFuture<Move> move = player.requestMove(board);
+			if (!move.isDone()) {
+				move.whenComplete(new BiConsumer<Move, Throwable>() {
+					@Override
+					public void accept(Move move, Throwable failure) {
+						onMove(player, move, failure);
+					}
+				});
+				return;
+			}
+			try {
+				applyMove(player, move.join());
+			} catch (RuntimeException e) {
+				// Also catches the CompletionException of a failed move.
+				fail(e);
+			}
+		}
+	}
+
+	/**
+	 * Goes on with the game once a requested move arrives.
+	 * 
+	 * @param player
+	 *            - the player the move was requested from
+	 * @param move
+	 *            - the move, or null if it failed
+	 * @param failure
+	 *            - why the move failed, or null if it arrived
+	 */
+	private synchronized void onMove(Player player, Move move,
+			Throwable failure) {
+		// The game may have been aborted while the move was on its way.
+		if (state != WAITING || player != players[turn]) {
+			return;
+		}
+		if (failure != null) {
+			fail(failure);
+			return;
+		}
+		applyMove(player, move);
+		requestMove();
+	}
+
+	/**
+	 * Plays a move if it is valid and moves on to the next turn. An invalid
+	 * move leaves the turn unchanged, so the move is asked for again. Called
+	 * with the lock held.
+	 */
+	private void applyMove(Player player, Move move) {
+		lastActivityTime = System.nanoTime();
+		thinkingTimes[turn] += lastActivityTime - requestTime;
+		if (move == null || !board.makeMove(move, player.getPlayerID())) {
+			return;
+		}
+		squares[board.getNumberOfMoves() - 1] = board.toSquare(move);
+		if (verbose) {
+			board.showBoard();
+		}
+
+		result = board.checkGameOver();
+		if (result != Board.INCOMPLETE) {
+			state = OVER;
+			writeRecord();
+			outcome.complete(result);
+		} else {
+			turn = 1 - turn;
+		}
+	}
+
+	/**
+	 * Ends the game after a player failed to move. Called with the lock
+	 * held.
+	 */
+	private void fail(Throwable failure) {
+		state = ABORTED;
+		writeRecord();
+		if (!(failure instanceof CancellationException)) {
+			logger.log(Level.WARNING, "Game " + id + " failed.\n" + failure);
+		}
+		outcome.completeExceptionally(failure);
+	}
+
+	/**
+	 * Logs the game, if it is logged. Called with the lock held.
+	 */
+	private void writeRecord() {
+		// Games aborted before they started are not logged.
+		if (recordWriter == null || firstPlayer == Board.EMPTY) {
+			return;
+		}
+		int[] engines = new int[Board.O + 1];
+		long[] times = new long[Board.O + 1];
+		for (int i = 0; i < players.length; ++i) {
+			engines[players[i].getPlayerID()] = GameRecord
+					.getEngine(players[i]);
+			times[players[i].getPlayerID()] = TimeUnit.NANOSECONDS
+					.toMillis(thinkingTimes[i]);
+		}
+		recordWriter.write(new GameRecord(board.getGeometry(),
+				engines[Board.X], engines[Board.O], firstPlayer, result,
+				startTime, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+						- startNanoTime), times[Board.X], times[Board.O],
+				squares, board.getNumberOfMoves(), 0));
+	}
+
+	public long getID() {
+		return id;
+	}
+
+	/**
+	 * @return - NEW, WAITING, OVER or ABORTED
+	 */
+	public synchronized int getState() {
+		return state;
+	}
+
+	/**
+	 * @return - Board.X, Board.O or Board.TIE once the game is over, or
+	 *         Board.INCOMPLETE before
+	 */
+	public synchronized int getResult() {
+		return result;
+	}
+
+	/**
+	 * @return - the player to move, or the last player to move once the game
+	 *         is over
+	 */
+	public synchronized Player getPlayerToMove() {
+		return players[turn];
+	}
+
+	/**
+	 * Looks a player up by the side they play.
+	 * 
+	 * @param playerID
+	 *            - Board.X or Board.O
+	 * @return - the player, or null if neither plays that side
+	 */
+	public Player getPlayer(int playerID) {
+		for (Player player : players) {
+			if (player.getPlayerID() == playerID) {
+				return player;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return - the ID of the player who moved first, or Board.EMPTY if the
+	 *         game has not started
+	 */
+	public synchronized int getFirstPlayer() {
+		return firstPlayer;
+	}
+
+	/**
+	 * @return - the squares played so far, in order
+	 */
+	public synchronized int[] getSquares() {
+		return Arrays.copyOf(squares, board.getNumberOfMoves());
+	}
+
+	/**
+	 * @return - a copy of the board
+	 */
+	public synchronized Board getBoard() {
+		return new Board(board);
+	}
+
+	/**
+	 * @return - the future result: Board.X, Board.O or Board.TIE
+	 */
+	public CompletableFuture<Integer> getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * @return - when a move was last played or asked for again
+	 *         (System.nanoTime())
+	 */
+	public long getLastActivityTime() {
+		return lastActivityTime;
+	}
+
+}
@@ -1,10 +1,10 @@
 package tictactoebot;
 
 import java.util.Random;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import tictactoebot.Board.Move;
 import tictactoebot.Player.ComputerPlayer;
 import tictactoebot.Player.HumanPlayer;
 
@@ -35,10 +35,50 @@ public class GameManager {
 	private static final int COMPUTER_VS_HUMAN_OPTION = 2;
 	private static final int COMPUTER_VS_COMPUTER_OPTION = 3;
 
+	// Board sizes: width, height, and number in a row needed to win.
+	private static final int[][] BOARD_SIZES = { { 3, 3, 3 }, { 4, 4, 4 },
+			{ 5, 5, 4 }, { 15, 15, 5 } };
+	private static final String[] BOARD_SIZE_NAMES = {
+			"3x3, 3 in a row (Tic-Tac-Toe)", "4x4, 4 in a row",
+			"5x5, 4 in a row", "15x15, 5 in a row (Gomoku)" };
+
+	// Search method names, indexed by search type.
+	private static final String[] SEARCH_TYPE_NAMES = {
+			"Minimax w/ Alpha-Beta Pruning", "Negamax w/ Alpha-Beta Pruning",
+			"Principal Variation Search", "Monte Carlo Tree Search" };
+
+	// Tablebase for computer players (null if not loaded).
+	private final Tablebase tablebase;
+	// Chooses the starting player of every game.
+	private final Random random = new Random();
+	// Where every game is logged (null if games are not).
+	private GameRecordWriter recordWriter;
+
 	public GameManager() {
+		this(null);
+	}
+
+	/**
+	 * Creates a game manager whose computer players use a tablebase.
+	 * 
+	 * @param tablebase
+	 *            - the tablebase to use, or null to always search
+	 */
+	public GameManager(Tablebase tablebase) {
+		this.tablebase = tablebase;
 		logger.log(Level.INFO, "Game manager created successfully.");
 	}
 
+	/**
+	 * Sets where every game is logged once it ends.
+	 * 
+	 * @param recordWriter
+	 *            - the writer, or null to log nothing (by default)
+	 */
+	public void setRecordWriter(GameRecordWriter recordWriter) {
+		this.recordWriter = recordWriter;
+	}
+
 	/**
 	 * The main application screen.
 	 * 
@@ -82,74 +122,132 @@ public class GameManager {
 				+ COMPUTER_VS_COMPUTER);
 
 		int selection = Main.getNextIntegerInput();
+		if (selection < HUMAN_VS_HUMAN_OPTION
+				|| selection > COMPUTER_VS_COMPUTER_OPTION) {
+			System.out.println(Main.INPUT_ERROR_MESSAGE);
+			return;
+		}
+
+		Board board = boardSizeScreen();
+		if (board == null) {
+			return;
+		}
+
+		int searchType = Search.NEGAMAX_ALPHA_BETA;
+		if (selection != HUMAN_VS_HUMAN_OPTION) {
+			searchType = searchTypeScreen();
+			if (searchType < 0) {
+				return;
+			}
+		}
+
 		// Passes the two player types.
 		switch (selection) {
 		case HUMAN_VS_HUMAN_OPTION:
-			playGame(new HumanPlayer(Board.X), new HumanPlayer(Board.O));
+			playGame(new HumanPlayer(Board.X), new HumanPlayer(Board.O), board);
 			break;
 		case COMPUTER_VS_HUMAN_OPTION:
-			playGame(new ComputerPlayer(Board.X), new HumanPlayer(Board.O));
+			// The computer keeps thinking while the human does.
+			ComputerPlayer computerPlayer = createComputerPlayer(Board.X,
+					searchType);
+			computerPlayer.setPondering(true);
+			playGame(computerPlayer, new HumanPlayer(Board.O), board);
+			computerPlayer.stopPondering();
 			break;
 		case COMPUTER_VS_COMPUTER_OPTION:
-			playGame(new ComputerPlayer(Board.X), new ComputerPlayer(Board.O));
+			playGame(createComputerPlayer(Board.X, searchType),
+					createComputerPlayer(Board.O, searchType), board);
 			break;
-		default:
+		}
+
+	}
+
+	/**
+	 * Screen to select the board size.
+	 * 
+	 * @return - a new empty board of the selected size, or null if the
+	 *         selection was invalid
+	 */
+	private Board boardSizeScreen() {
+
+		System.out.println();
+		System.out.println("Which board would you like to play on?");
+		for (int i = 0; i < BOARD_SIZES.length; ++i) {
+			System.out.println(Integer.toString(i + 1) + ") "
+					+ BOARD_SIZE_NAMES[i]);
+		}
+
+		int selection = Main.getNextIntegerInput() - 1;
+		if (selection < 0 || selection >= BOARD_SIZES.length) {
 			System.out.println(Main.INPUT_ERROR_MESSAGE);
+			return null;
 		}
+		int[] size = BOARD_SIZES[selection];
+		return new Board(size[0], size[1], size[2]);
 
 	}
 
 	/**
-	 * Starts a game.
+	 * Screen to select the computer players' search method.
 	 * 
-	 * @param gameType
-	 *            - Game Type: Human versus Human, Computer versus Human,
-	 *            Computer versus Computer
+	 * @return - the selected search type, or -1 if the selection was invalid
 	 */
-	private void playGame(Player playerOne, Player playerTwo) {
+	private int searchTypeScreen() {
 
-		// Create a new board and display it.
-		Board board = new Board();
-		board.showBoard();
+		System.out.println();
+		System.out.println("Which search should the computer use?");
+		for (int i = 0; i < SEARCH_TYPE_NAMES.length; ++i) {
+			System.out.println(Integer.toString(i + 1) + ") "
+					+ SEARCH_TYPE_NAMES[i]);
+		}
 
-		// Randomly choose the starting player.
-		Random random = new Random();
-		int turn = random.nextInt(2); // Chooses 0 or 1
+		int selection = Main.getNextIntegerInput() - 1;
+		if (selection < 0 || selection >= SEARCH_TYPE_NAMES.length) {
+			System.out.println(Main.INPUT_ERROR_MESSAGE);
+			return -1;
+		}
+		return selection;
 
-		boolean validMove;
-		Move coordinates;
-		int result;
-		do {
-			switch (turn) {
-			case 0:
-				// Loop until a valid move is provided.
-				do {
-					playerOne.printPlayerTurn();
-					coordinates = playerOne.getMove(board);
-					validMove = board.makeMove(coordinates,
-							playerOne.getPlayerID());
-				} while (!validMove);
-				break;
-			case 1:
-				// Loop until a valid move is provided.
-				do {
-					playerTwo.printPlayerTurn();
-					coordinates = playerTwo.getMove(board);
-					validMove = board.makeMove(coordinates,
-							playerTwo.getPlayerID());
-				} while (!validMove);
-				break;
-			}
+	}
 
-			// Switch turns.
-			turn = (turn + 1) % 2;
-			// Current result.
-			result = board.checkGameOver();
-			// Show resulting board.
-			board.showBoard();
+	/**
+	 * Creates a computer player for one game.
+	 * 
+	 * @param player
+	 *            - ID of player (O or X)
+	 * @param searchType
+	 *            - one of the search types defined by Search
+	 * @return - the computer player
+	 */
+	private ComputerPlayer createComputerPlayer(int player, int searchType) {
+		ComputerPlayer computerPlayer = new ComputerPlayer(player, tablebase);
+		computerPlayer.setSearchType(searchType);
+		return computerPlayer;
+	}
 
-		} while (result == Board.INCOMPLETE);
+	/**
+	 * Plays a game on the console, waiting until it is over.
+	 * 
+	 * @param playerOne
+	 *            - one player
+	 * @param playerTwo
+	 *            - the other player
+	 * @param board
+	 *            - the empty board to play on
+	 */
+	private void playGame(Player playerOne, Player playerTwo, Board board) {
 
+		Game game = new Game(0, playerOne, playerTwo, board);
+		game.setVerbose(true);
+		game.setRecordWriter(recordWriter);
+		// Randomly choose the starting player.
+		int result;
+		try {
+			result = game.start(random.nextInt(2)).join();
+		} catch (CompletionException e) {
+			logger.log(Level.WARNING, "The game failed.\n" + e.getCause());
+			result = Board.INCOMPLETE;
+		}
 		System.out.println();
 		switch (result) {
 		case Board.TIE:
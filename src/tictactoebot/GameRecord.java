@@ -0,0 +1,283 @@
+package tictactoebot;
+
+import java.nio.ByteBuffer;
+
+import tictactoebot.Player.ComputerPlayer;
+
+/**
+ * A finished game in a compact binary form: a fixed-size header describing
+ * the board, the players, the result and the timings, followed by one byte
+ * per move with its square index. A game of Tic-Tac-Toe takes under 40 bytes,
+ * so millions of games fit in a file that can be scanned in seconds (see
+ * GameRecordReader).
+ * 
+ * The header is, in order: the board width, height and win length, the
+ * engine of X and of O (a search type, or HUMAN), the player who moved first,
+ * the result (Board.X, Board.O, Board.TIE, or Board.INCOMPLETE for a game
+ * that was abandoned), the start time in milliseconds since the epoch, the
+ * duration and the thinking time of X and of O in milliseconds, the number of
+ * opening moves played at random rather than searched, and the number of
+ * moves. All numbers are big-endian.
+ * 
+ * @author rongil
+ *
+ */
+public final class GameRecord {
+
+	// Engine of a human player.
+	public static final int HUMAN = 0xff;
+	// Bytes before the moves.
+	public static final int HEADER_SIZE = 29;
+	// Largest record, on the largest board.
+	public static final int MAX_SIZE = HEADER_SIZE + BoardGeometry.MAX_SIZE
+			* BoardGeometry.MAX_SIZE;
+
+	private final BoardGeometry geometry;
+	private final int[] engines; // Indexed by player ID
+	private final int firstPlayer;
+	private final int result;
+	private final long startTime; // Milliseconds since the epoch
+	private final int duration; // Milliseconds
+	private final int[] thinkingTimes; // Milliseconds, indexed by player ID
+	private final int openingMoves;
+	private final byte[] moves; // Square indices
+
+	/**
+	 * Creates the record of a game.
+	 * 
+	 * @param geometry
+	 *            - the shape of the board
+	 * @param engineX
+	 *            - the search type of X, or HUMAN
+	 * @param engineO
+	 *            - the search type of O, or HUMAN
+	 * @param firstPlayer
+	 *            - the player who moved first (X or O)
+	 * @param result
+	 *            - Board.X, Board.O, Board.TIE or Board.INCOMPLETE
+	 * @param startTime
+	 *            - when the game started, in milliseconds since the epoch
+	 * @param duration
+	 *            - how long the game took, in milliseconds
+	 * @param thinkingTimeX
+	 *            - the time X took for its moves, in milliseconds
+	 * @param thinkingTimeO
+	 *            - the time O took for its moves, in milliseconds
+	 * @param squares
+	 *            - the squares played, in order
+	 * @param moveCount
+	 *            - the number of squares played
+	 * @param openingMoves
+	 *            - how many of the first squares were played at random
+	 *            rather than chosen by the players
+	 */
+	public GameRecord(BoardGeometry geometry, int engineX, int engineO,
+			int firstPlayer, int result, long startTime, long duration,
+			long thinkingTimeX, long thinkingTimeO, int[] squares,
+			int moveCount, int openingMoves) {
+		this.geometry = geometry;
+		this.engines = new int[] { 0, engineX, engineO };
+		this.firstPlayer = firstPlayer;
+		this.result = result;
+		this.startTime = startTime;
+		this.duration = toInt(duration);
+		this.thinkingTimes = new int[] { 0, toInt(thinkingTimeX),
+				toInt(thinkingTimeO) };
+		this.openingMoves = openingMoves;
+		this.moves = new byte[moveCount];
+		for (int i = 0; i < moveCount; ++i) {
+			moves[i] = (byte) squares[i];
+		}
+	}
+
+	private GameRecord(BoardGeometry geometry, int[] engines,
+			int firstPlayer, int result, long startTime, int duration,
+			int[] thinkingTimes, int openingMoves, byte[] moves) {
+		this.geometry = geometry;
+		this.engines = engines;
+		this.firstPlayer = firstPlayer;
+		this.result = result;
+		this.startTime = startTime;
+		this.duration = duration;
+		this.thinkingTimes = thinkingTimes;
+		this.openingMoves = openingMoves;
+		this.moves = moves;
+	}
+
+	/**
+	 * Gets the engine a player uses.
+	 * 
+	 * @param player
+	 *            - a player (the engine of a computer player is its search
+	 *            type)
+	 * @return - the search type, or HUMAN
+	 */
+	public static int getEngine(Player player) {
+		return player instanceof ComputerPlayer ? ((ComputerPlayer) player)
+				.getSearchType() : HUMAN;
+	}
+
+	/**
+	 * @return - the size of the encoded record in bytes
+	 */
+	public int getSize() {
+		return HEADER_SIZE + moves.length;
+	}
+
+	/**
+	 * Writes the record at the buffer's position.
+	 * 
+	 * @param buffer
+	 *            - a buffer with at least getSize bytes remaining
+	 */
+	public void encode(ByteBuffer buffer) {
+		buffer.put((byte) geometry.getWidth());
+		buffer.put((byte) geometry.getHeight());
+		buffer.put((byte) geometry.getWinLength());
+		buffer.put((byte) engines[Board.X]);
+		buffer.put((byte) engines[Board.O]);
+		buffer.put((byte) firstPlayer);
+		buffer.put((byte) result);
+		buffer.putLong(startTime);
+		buffer.putInt(duration);
+		buffer.putInt(thinkingTimes[Board.X]);
+		buffer.putInt(thinkingTimes[Board.O]);
+		buffer.put((byte) openingMoves);
+		buffer.put((byte) moves.length);
+		buffer.put(moves);
+	}
+
+	/**
+	 * Reads a record at the buffer's position, leaving the position after
+	 * it.
+	 * 
+	 * @param buffer
+	 *            - the buffer
+	 * @return - the record
+	 * @throws IllegalArgumentException
+	 *             - if the bytes are not a valid record
+	 */
+	public static GameRecord decode(ByteBuffer buffer) {
+		BoardGeometry geometry = BoardGeometry.of(buffer.get() & 0xff,
+				buffer.get() & 0xff, buffer.get() & 0xff);
+		int[] engines = { 0, buffer.get() & 0xff, buffer.get() & 0xff };
+		int firstPlayer = buffer.get();
+		int result = buffer.get();
+		long startTime = buffer.getLong();
+		int duration = buffer.getInt();
+		int[] thinkingTimes = { 0, buffer.getInt(), buffer.getInt() };
+		int openingMoves = buffer.get() & 0xff;
+		byte[] moves = new byte[buffer.get() & 0xff];
+		buffer.get(moves);
+		return new GameRecord(geometry, engines, firstPlayer, result,
+				startTime, duration, thinkingTimes, openingMoves, moves);
+	}
+
+	/**
+	 * Gets the size of the record at a position of a buffer without reading
+	 * it.
+	 * 
+	 * @param buffer
+	 *            - the buffer
+	 * @param position
+	 *            - the position of a record
+	 * @return - the size of the record in bytes
+	 */
+	static int getSize(ByteBuffer buffer, int position) {
+		return HEADER_SIZE + (buffer.get(position + HEADER_SIZE - 1) & 0xff);
+	}
+
+	/**
+	 * Plays the game again, move by move.
+	 * 
+	 * @param moveCount
+	 *            - the number of moves to play
+	 * @return - the board after those moves
+	 */
+	public Board replay(int moveCount) {
+		Board board = new Board(geometry);
+		int player = firstPlayer;
+		for (int i = 0; i < moveCount; ++i) {
+			board.makeMove(moves[i] & 0xff, player);
+			player = player == Board.X ? Board.O : Board.X;
+		}
+		return board;
+	}
+
+	public BoardGeometry getGeometry() {
+		return geometry;
+	}
+
+	/**
+	 * @param player
+	 *            - the player ID (O or X)
+	 * @return - the player's search type, or HUMAN
+	 */
+	public int getEngine(int player) {
+		return engines[player];
+	}
+
+	public int getFirstPlayer() {
+		return firstPlayer;
+	}
+
+	/**
+	 * @return - Board.X, Board.O, Board.TIE, or Board.INCOMPLETE if the game
+	 *         was abandoned
+	 */
+	public int getResult() {
+		return result;
+	}
+
+	/**
+	 * @return - when the game started, in milliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return - how long the game took, in milliseconds
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @param player
+	 *            - the player ID (O or X)
+	 * @return - the time the player took for its moves, in milliseconds
+	 */
+	public int getThinkingTime(int player) {
+		return thinkingTimes[player];
+	}
+
+	public int getMoveCount() {
+		return moves.length;
+	}
+
+	/**
+	 * @return - how many of the first moves were played at random rather
+	 *         than chosen by the players
+	 */
+	public int getOpeningMoves() {
+		return openingMoves;
+	}
+
+	/**
+	 * @param move
+	 *            - the index of a move
+	 * @return - the square played
+	 */
+	public int getSquare(int move) {
+		return moves[move] & 0xff;
+	}
+
+	/**
+	 * Clamps a time to what the record holds.
+	 */
+	private static int toInt(long time) {
+		return (int) Math.min(time, Integer.MAX_VALUE);
+	}
+
+}
@@ -0,0 +1,163 @@
+package tictactoebot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a file of game records (see GameRecordWriter) by mapping it into
+ * memory, so scanning millions of games costs no read calls and no copying.
+ * Files larger than a mapping can hold are mapped a window at a time.
+ * 
+ * A record cut short at the end of the file, by a crash while it was being
+ * written, is ignored.
+ * 
+ * @author rongil
+ *
+ */
+public class GameRecordReader implements Closeable {
+
+	// Bytes mapped at a time.
+	private static final long WINDOW_SIZE = 1 << 30;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private ByteBuffer window;
+	private long windowStart;
+	private long position; // Of the next record in the file
+
+	private GameRecordReader(RandomAccessFile file) throws IOException {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.size = channel.size();
+		this.position = GameRecordWriter.FILE_HEADER_SIZE;
+	}
+
+	/**
+	 * Opens a file of game records, positioned before its first record.
+	 * 
+	 * @param file
+	 *            - the file
+	 * @return - the reader
+	 * @throws IOException
+	 *             - if the file cannot be read or is not a game record file
+	 */
+	public static GameRecordReader open(File file) throws IOException {
+		GameRecordReader reader = new GameRecordReader(new RandomAccessFile(
+				file, "r"));
+		try {
+			if (reader.size < GameRecordWriter.FILE_HEADER_SIZE) {
+				throw new IOException("Not a game record file: " + file);
+			}
+			ByteBuffer header = reader.map(0);
+			if (header.getInt(0) != GameRecordWriter.MAGIC) {
+				throw new IOException("Not a game record file: " + file);
+			}
+			if (header.get(4) != GameRecordWriter.VERSION) {
+				throw new IOException("Unknown game record version: "
+						+ header.get(4));
+			}
+		} catch (IOException e) {
+			reader.close();
+			throw e;
+		}
+		return reader;
+	}
+
+	/**
+	 * @return - true if there is another complete record
+	 * @throws IOException
+	 *             - if the file cannot be mapped
+	 */
+	public boolean hasNext() throws IOException {
+		if (position + GameRecord.HEADER_SIZE > size) {
+			return false;
+		}
+		ByteBuffer buffer = map(position);
+		int recordSize = GameRecord.getSize(buffer,
+				(int) (position - windowStart));
+		return position + recordSize <= size;
+	}
+
+	/**
+	 * Reads the next record.
+	 * 
+	 * @return - the record
+	 * @throws IOException
+	 *             - if the file cannot be mapped
+	 * @throws NoSuchElementException
+	 *             - if there are no more complete records
+	 */
+	public GameRecord next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ByteBuffer buffer = map(position);
+		buffer.position((int) (position - windowStart));
+		GameRecord record = GameRecord.decode(buffer);
+		position = windowStart + buffer.position();
+		return record;
+	}
+
+	/**
+	 * Skips records without reading them.
+	 * 
+	 * @param records
+	 *            - the number of records to skip
+	 * @return - the number of records skipped (fewer at the end of the file)
+	 * @throws IOException
+	 *             - if the file cannot be mapped
+	 */
+	public long skip(long records) throws IOException {
+		long skipped = 0;
+		while (skipped < records && hasNext()) {
+			position += GameRecord.getSize(window,
+					(int) (position - windowStart));
+			++skipped;
+		}
+		return skipped;
+	}
+
+	/**
+	 * @return - the position in the file after the last record read or
+	 *         skipped
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Maps the window holding the record at a position of the file, if the
+	 * current window does not already hold all of it.
+	 * 
+	 * @param recordPosition
+	 *            - the position of a record in the file
+	 * @return - the window
+	 * @throws IOException
+	 *             - if the file cannot be mapped
+	 */
+	private ByteBuffer map(long recordPosition) throws IOException {
+		long end = Math.min(recordPosition + GameRecord.MAX_SIZE, size);
+		if (window != null && recordPosition >= windowStart
+				&& end <= windowStart + window.capacity()) {
+			return window;
+		}
+		windowStart = recordPosition;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+				Math.min(WINDOW_SIZE, size - windowStart));
+		return window;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// The mapping stays valid until it is garbage collected.
+		window = null;
+		file.close();
+	}
+
+}
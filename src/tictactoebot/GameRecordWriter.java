@@ -0,0 +1,184 @@
+package tictactoebot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends game records to a file from a background thread, so that games
+ * never wait for the disk. Records written while the thread is busy are
+ * queued and then written together in a single write.
+ * 
+ * A new file starts with a short header: the bytes TTTR and a format version.
+ * A record cut short by a crash is dropped when the file is opened again.
+ * 
+ * @author rongil
+ *
+ */
+public class GameRecordWriter implements Closeable {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Start of every game record file.
+	static final int MAGIC = 0x54545452; // TTTR
+	static final byte VERSION = 2;
+	static final int FILE_HEADER_SIZE = 5;
+	// Records queued before new ones are dropped.
+	private static final int MAX_QUEUED_RECORDS = 1 << 16;
+	// Records written together at most.
+	private static final int MAX_BATCH = 1024;
+	// Queued to tell the writing thread to finish.
+	private static final GameRecord END = new GameRecord(
+			BoardGeometry.STANDARD, 0, 0, Board.X, Board.INCOMPLETE, 0, 0, 0,
+			0, new int[0], 0, 0);
+
+	private final FileChannel channel;
+	private final BlockingQueue<GameRecord> queue =
+			new LinkedBlockingQueue<GameRecord>(MAX_QUEUED_RECORDS);
+	private final Thread thread;
+	// Guarded by this writer, so no record is queued after END.
+	private boolean closed;
+
+	/**
+	 * Opens a file of game records for appending, creating it if needed, and
+	 * starts the writing thread.
+	 * 
+	 * @param file
+	 *            - the file
+	 * @throws IOException
+	 *             - if the file cannot be opened or is not a game record
+	 *             file
+	 */
+	public GameRecordWriter(File file) throws IOException {
+		boolean exists = file.length() > 0;
+		long length = 0; // Of the complete records
+		if (exists) {
+			// Fails rather than append to some other kind of file.
+			GameRecordReader reader = GameRecordReader.open(file);
+			try {
+				reader.skip(Long.MAX_VALUE);
+				length = reader.getPosition();
+			} finally {
+				reader.close();
+			}
+		}
+		channel = new FileOutputStream(file, true).getChannel();
+		if (exists && length < channel.size()) {
+			channel.truncate(length);
+		}
+		if (!exists) {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			header.putInt(MAGIC).put(VERSION).flip();
+			writeFully(header);
+		}
+
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeRecords();
+			}
+		}, "game-records");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a record to be written, without waiting. If the disk has fallen
+	 * far behind, the record is dropped rather than holding up the game.
+	 * Records written once the writer is closed are rejected.
+	 * 
+	 * @param record
+	 *            - the record
+	 * @return - false if the record was dropped or rejected
+	 */
+	public boolean write(GameRecord record) {
+		synchronized (this) {
+			if (closed) {
+				logger.log(Level.WARNING, "Rejected a game record written "
+						+ "after the records were closed.");
+				return false;
+			}
+			if (queue.offer(record)) {
+				return true;
+			}
+		}
+		logger.log(Level.WARNING, "Dropped a game record.");
+		return false;
+	}
+
+	/**
+	 * Writes the records still queued and closes the file. Blocks until
+	 * done.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		// Every record accepted before closing is already queued.
+		try {
+			queue.put(END);
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	/**
+	 * Writes records as they are queued, until END. Runs on the writing
+	 * thread.
+	 */
+	private void writeRecords() {
+
+		ByteBuffer buffer = ByteBuffer.allocate(MAX_BATCH
+				* GameRecord.MAX_SIZE);
+		List<GameRecord> batch = new ArrayList<GameRecord>(MAX_BATCH);
+		boolean end = false;
+		while (!end) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, MAX_BATCH - 1);
+
+			buffer.clear();
+			for (GameRecord record : batch) {
+				if (record == END) {
+					end = true;
+				} else {
+					record.encode(buffer);
+				}
+			}
+			batch.clear();
+			buffer.flip();
+			try {
+				writeFully(buffer);
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Could not write game records.\n"
+						+ e);
+			}
+		}
+
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+package tictactoebot;
+
+import java.io.IOException;
+
+/**
+ * Totals over many game records: how the games ended and, for each engine
+ * (search type, or human), its wins, draws and losses and how long it thought
+ * per move.
+ * 
+ * @author rongil
+ *
+ */
+public class GameStatistics {
+
+	// Index of human players among the engines.
+	private static final int HUMAN = Search.SEARCH_TYPE_NAMES.length;
+
+	private long games;
+	private long abandoned;
+	private long moves;
+	private long duration; // Milliseconds
+	// Indexed by engine
+	private final long[] engineGames = new long[HUMAN + 1];
+	private final long[] wins = new long[HUMAN + 1];
+	private final long[] draws = new long[HUMAN + 1];
+	private final long[] engineMoves = new long[HUMAN + 1];
+	private final long[] thinkingTimes = new long[HUMAN + 1]; // Milliseconds
+
+	/**
+	 * Adds up every record left in a file.
+	 * 
+	 * @param reader
+	 *            - the records
+	 * @return - the statistics
+	 * @throws IOException
+	 *             - if the records cannot be read
+	 */
+	public static GameStatistics of(GameRecordReader reader)
+			throws IOException {
+		GameStatistics statistics = new GameStatistics();
+		while (reader.hasNext()) {
+			statistics.add(reader.next());
+		}
+		return statistics;
+	}
+
+	/**
+	 * Adds a game.
+	 * 
+	 * @param record
+	 *            - the game's record
+	 */
+	public void add(GameRecord record) {
+
+		++games;
+		moves += record.getMoveCount();
+		duration += record.getDuration();
+		int result = record.getResult();
+		if (result == Board.INCOMPLETE) {
+			++abandoned;
+			return;
+		}
+
+		for (int player = Board.X; player <= Board.O; ++player) {
+			int engine = record.getEngine(player);
+			engine = engine < HUMAN ? engine : HUMAN;
+			++engineGames[engine];
+			if (result == player) {
+				++wins[engine];
+			} else if (result == Board.TIE) {
+				++draws[engine];
+			}
+			// Opening moves were not searched, so take no thinking time.
+			engineMoves[engine] += getMoves(record, player,
+					record.getMoveCount())
+					- getMoves(record, player, record.getOpeningMoves());
+			thinkingTimes[engine] += record.getThinkingTime(player);
+		}
+
+	}
+
+	/**
+	 * Counts a player's moves among the first moves of a game.
+	 * 
+	 * @param record
+	 *            - the game's record
+	 * @param player
+	 *            - the player ID (O or X)
+	 * @param moveCount
+	 *            - the number of moves counted
+	 * @return - how many of them the player made
+	 */
+	private static int getMoves(GameRecord record, int player, int moveCount) {
+		// The first player makes the odd move out.
+		return (moveCount + (record.getFirstPlayer() == player ? 1 : 0)) / 2;
+	}
+
+	public long getGames() {
+		return games;
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder builder = new StringBuilder();
+		builder.append(games).append(" games, ").append(abandoned)
+				.append(" abandoned, ");
+		builder.append(String.format("%.1f", games == 0 ? 0.0
+				: (double) moves / games)).append(" moves and ")
+				.append(games == 0 ? 0 : duration / games)
+				.append(" ms per game\n");
+		for (int engine = 0; engine <= HUMAN; ++engine) {
+			if (engineGames[engine] == 0) {
+				continue;
+			}
+			long losses = engineGames[engine] - wins[engine] - draws[engine];
+			builder.append(engine == HUMAN ? "human"
+					: Search.SEARCH_TYPE_NAMES[engine]);
+			builder.append(": ").append(wins[engine]).append("/")
+					.append(draws[engine]).append("/").append(losses)
+					.append(" wins/draws/losses, ");
+			builder.append(engineMoves[engine] == 0 ? 0 : thinkingTimes[engine]
+					/ engineMoves[engine]).append(" ms per move\n");
+		}
+		return builder.toString();
+
+	}
+
+}
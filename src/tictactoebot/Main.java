@@ -1,5 +1,13 @@
 package tictactoebot;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.util.Scanner;
 
 /**
@@ -15,20 +23,401 @@ public class Main {
 	// Error Message
 	public static final String INPUT_ERROR_MESSAGE = "Invalid Input.";
 
+	// Command line options
+	private static final String GENERATE_TABLEBASE = "--generate-tablebase";
+	private static final String TABLEBASE = "--tablebase";
+	private static final String THREADS = "--threads";
+	private static final String TOURNAMENT = "--tournament";
+	private static final String GAMES = "--games";
+	private static final String ENGINES = "--engines";
+	private static final String MOVE_TIME = "--move-time";
+	private static final String CLOCK = "--clock";
+	private static final String DEPTH = "--depth";
+	private static final String NODES = "--nodes";
+	private static final String BOARD = "--board";
+	private static final String PROTOCOL = "--protocol";
+	private static final String SERVER = "--server";
+	private static final String ANALYZE = "--analyze";
+	private static final String OUTPUT = "--output";
+	private static final String FORMAT = "--format";
+	private static final String RECORDS = "--records";
+	private static final String GAME_STATS = "--game-stats";
+	private static final String REPLAY = "--replay";
+	// Protocols spoken by --protocol.
+	private static final String UCI = "uci";
+	// Position encodings read by --format.
+	private static final String TEXT = "text";
+	private static final String BINARY = "binary";
+	// File name standing for standard input.
+	private static final String STANDARD_INPUT = "-";
+	private static final String USAGE = "Usage: [" + GENERATE_TABLEBASE
+			+ " FILE] [" + TABLEBASE + " FILE] [" + THREADS + " N] ["
+			+ TOURNAMENT + " FILE [" + GAMES + " N] [" + ENGINES
+			+ " TYPE,TYPE] [" + MOVE_TIME + " MS | " + CLOCK + " MS,INC | "
+			+ DEPTH + " N | " + NODES + " N] [" + BOARD + " W,H,K]] ["
+			+ PROTOCOL + " " + UCI + "] [" + SERVER + " PORT] [" + ANALYZE
+			+ " FILE [" + OUTPUT + " FILE] [" + FORMAT + " " + TEXT + " | "
+			+ BINARY + "]] [" + RECORDS + " FILE] [" + GAME_STATS + " FILE ["
+			+ REPLAY + " N]]";
+
+	// Tournament defaults
+	private static final int DEFAULT_GAMES = 1000;
+	private static final long DEFAULT_MOVE_TIME = 100; // Milliseconds
+
+	/**
+	 * Starts the game. Accepts the following (optional) arguments:
+	 * 
+	 * <pre>
+	 * --generate-tablebase FILE   Solves every position into FILE and exits
+	 * --tablebase FILE            Computer players look moves up in FILE
+	 * --threads N                 Threads each computer search may use
+	 * --tournament FILE           Plays computer games headlessly, writing
+	 *                             the results to FILE, and exits
+	 * --games N                   Number of tournament games (1000)
+	 * --engines TYPE,TYPE         Search types of the two tournament engines
+	 *                             (minimax, negamax, pvs or mcts)
+	 * --move-time MS              Time per move of tournaments and analysis
+	 *                             (100)
+	 * --clock MS,INC              Tournament clock per game, with increment
+	 * --depth N                   Search depth per move of tournaments and
+	 *                             analysis
+	 * --nodes N                   Nodes (or playouts) per move of
+	 *                             tournaments and analysis
+	 * --board W,H,K               Board size of tournaments and analysis
+	 *                             (3,3,3)
+	 * --protocol uci              Speaks the engine protocol (see Protocol)
+	 *                             on standard input and output
+	 * --server PORT               Serves the engine protocol to many clients
+	 *                             on PORT of the loopback address
+	 * --analyze FILE              Writes the best move and score of every
+	 *                             position in FILE (- for standard input)
+	 *                             and exits, using the first engine
+	 * --output FILE               Analysis output, resumed if it exists
+	 *                             (standard output by default)
+	 * --format text | binary      Analysis input encoding (see Analyzer)
+	 * --records FILE              Logs every game played, including
+	 *                             tournament games, to FILE
+	 * --game-stats FILE           Prints statistics of the games logged in
+	 *                             FILE and exits
+	 * --replay N                  With --game-stats, shows game N (counted
+	 *                             from 0) move by move instead
+	 * </pre>
+	 */
 	public static void main(String[] args) {
+
+		Tablebase tablebase = null;
+		int searchThreads = 1;
+		File tournamentFile = null;
+		int games = DEFAULT_GAMES;
+		int[] searchTypes = { Search.NEGAMAX_ALPHA_BETA,
+				Search.PRINCIPAL_VARIATION };
+		SearchLimits limits = SearchLimits.moveTime(DEFAULT_MOVE_TIME);
+		BoardGeometry geometry = BoardGeometry.STANDARD;
+		boolean protocol = false;
+		int serverPort = -1;
+		String analysisInput = null;
+		File analysisOutput = null;
+		boolean binary = false;
+		File recordsFile = null;
+		File statisticsFile = null;
+		int replay = -1;
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 == args.length) {
+				exitWithError(USAGE);
+			}
+			String value = args[i + 1];
+
+			if (args[i].equals(GENERATE_TABLEBASE)) {
+				try {
+					int positions = Tablebase.generate(new File(value));
+					System.out.println("Solved " + positions
+							+ " positions into " + value + ".");
+				} catch (IOException e) {
+					exitWithError("Could not write the tablebase: "
+							+ e.getMessage());
+				}
+				return;
+			} else if (args[i].equals(TABLEBASE)) {
+				try {
+					tablebase = Tablebase.open(new File(value));
+				} catch (IOException e) {
+					exitWithError("Could not load the tablebase: "
+							+ e.getMessage());
+				}
+			} else if (args[i].equals(THREADS)) {
+				searchThreads = parsePositiveInteger(value);
+			} else if (args[i].equals(TOURNAMENT)) {
+				tournamentFile = new File(value);
+			} else if (args[i].equals(GAMES)) {
+				games = parsePositiveInteger(value);
+			} else if (args[i].equals(ENGINES)) {
+				String[] names = value.split(",");
+				if (names.length != 2) {
+					exitWithError(USAGE);
+				}
+				searchTypes[0] = parseSearchType(names[0]);
+				searchTypes[1] = parseSearchType(names[1]);
+			} else if (args[i].equals(MOVE_TIME)) {
+				limits = SearchLimits.moveTime(parsePositiveInteger(value));
+			} else if (args[i].equals(CLOCK)) {
+				String[] clock = value.split(",");
+				if (clock.length != 2) {
+					exitWithError(USAGE);
+				}
+				limits = SearchLimits.clock(parsePositiveInteger(clock[0]),
+						parseNonNegativeInteger(clock[1]));
+			} else if (args[i].equals(DEPTH)) {
+				limits = SearchLimits.depth(parsePositiveInteger(value));
+			} else if (args[i].equals(NODES)) {
+				limits = SearchLimits.nodes(parsePositiveInteger(value));
+			} else if (args[i].equals(BOARD)) {
+				String[] size = value.split(",");
+				if (size.length != 3) {
+					exitWithError(USAGE);
+				}
+				try {
+					geometry = BoardGeometry.of(parsePositiveInteger(size[0]),
+							parsePositiveInteger(size[1]),
+							parsePositiveInteger(size[2]));
+				} catch (IllegalArgumentException e) {
+					exitWithError(e.getMessage());
+				}
+			} else if (args[i].equals(PROTOCOL) && value.equals(UCI)) {
+				protocol = true;
+			} else if (args[i].equals(SERVER)) {
+				serverPort = parseNonNegativeInteger(value);
+			} else if (args[i].equals(ANALYZE)) {
+				analysisInput = value;
+			} else if (args[i].equals(OUTPUT)) {
+				analysisOutput = new File(value);
+			} else if (args[i].equals(FORMAT)
+					&& (value.equals(TEXT) || value.equals(BINARY))) {
+				binary = value.equals(BINARY);
+			} else if (args[i].equals(RECORDS)) {
+				recordsFile = new File(value);
+			} else if (args[i].equals(GAME_STATS)) {
+				statisticsFile = new File(value);
+			} else if (args[i].equals(REPLAY)) {
+				replay = parseNonNegativeInteger(value);
+			} else {
+				exitWithError(USAGE);
+			}
+		}
+
+		if (statisticsFile != null) {
+			try {
+				showGames(statisticsFile, replay);
+			} catch (IOException e) {
+				exitWithError("Could not read the games: " + e.getMessage());
+			}
+			return;
+		}
+
+		GameRecordWriter recordWriter = null;
+		if (recordsFile != null) {
+			try {
+				recordWriter = new GameRecordWriter(recordsFile);
+			} catch (IOException e) {
+				exitWithError("Could not open the game records: "
+						+ e.getMessage());
+			}
+		}
+
+		// Searches share one long-lived engine.
+		Engine engine = new Engine(Runtime.getRuntime().availableProcessors(),
+				searchThreads);
+		engine.start();
+		Engine.setShared(engine);
+
+		if (tournamentFile != null) {
+			// Compile the search code before the first timed move.
+			engine.warmUp();
+			Tournament tournament = new Tournament(engine, geometry,
+					searchTypes[0], searchTypes[1]);
+			tournament.setLimits(limits);
+			tournament.setRecordWriter(recordWriter);
+			try {
+				tournament.run(games, tournamentFile);
+			} catch (IOException e) {
+				exitWithError("Tournament failed: " + e.getMessage());
+			} catch (InterruptedException e) {
+				exitWithError("Tournament interrupted.");
+			}
+			System.out.println("Results written to " + tournamentFile + ".");
+			closeRecords(recordWriter);
+			return;
+		}
+
+		if (analysisInput != null) {
+			Analyzer analyzer = new Analyzer(engine, geometry);
+			analyzer.setSearchType(searchTypes[0]);
+			analyzer.setLimits(limits);
+			analyzer.setBinary(binary);
+			try {
+				InputStream input = analysisInput.equals(STANDARD_INPUT)
+						? System.in : new FileInputStream(analysisInput);
+				if (analysisOutput != null) {
+					analyzer.run(input, analysisOutput);
+				} else {
+					analyzer.run(input, new BufferedWriter(
+							new OutputStreamWriter(System.out)), 0);
+				}
+				input.close();
+			} catch (IOException e) {
+				exitWithError("Analysis failed: " + e.getMessage());
+			} catch (InterruptedException e) {
+				exitWithError("Analysis interrupted.");
+			}
+			return;
+		}
+
+		if (protocol) {
+			try {
+				new Protocol(engine).run(new BufferedReader(
+						new InputStreamReader(System.in)), new BufferedWriter(
+						new OutputStreamWriter(System.out)));
+			} catch (IOException e) {
+				exitWithError("Protocol failed: " + e.getMessage());
+			}
+			return;
+		}
+
+		if (serverPort >= 0) {
+			try {
+				Server server = new Server(engine, serverPort);
+				System.out.println("Serving on port " + server.getPort()
+						+ ".");
+				server.run();
+			} catch (IOException e) {
+				exitWithError("Server failed: " + e.getMessage());
+			}
+			return;
+		}
+
+		// Compile the search code before the first computer move.
+		engine.warmUp();
+
 		// Single scanner used to handle all future console input.
 		scanner = new Scanner(System.in);
 		// NOTE: Possible to improve by adding a GUI.
-		GameManager manager = new GameManager();
+		GameManager manager = new GameManager(tablebase);
+		manager.setRecordWriter(recordWriter);
 		// Run the game until exit is called.
 		boolean exit;
 		do {
 			exit = manager.startScreen();
 			System.out.println();
 		} while (!exit);
+		closeRecords(recordWriter);
 
 	}
 
+	/**
+	 * Prints statistics of the games in a file of game records, or replays
+	 * one of them.
+	 * 
+	 * @param file
+	 *            - the game records
+	 * @param replay
+	 *            - the game to replay, or -1 for statistics
+	 * @throws IOException
+	 *             - if the file cannot be read
+	 */
+	private static void showGames(File file, int replay) throws IOException {
+		GameRecordReader reader = GameRecordReader.open(file);
+		try {
+			if (replay < 0) {
+				System.out.print(GameStatistics.of(reader));
+				return;
+			}
+			if (reader.skip(replay) < replay || !reader.hasNext()) {
+				exitWithError("There is no game " + replay + ".");
+			}
+			GameRecord record = reader.next();
+			for (int move = 0; move <= record.getMoveCount(); ++move) {
+				record.replay(move).showBoard();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes the game records still queued, if games are logged.
+	 * 
+	 * @param recordWriter
+	 *            - the writer, or null
+	 */
+	private static void closeRecords(GameRecordWriter recordWriter) {
+		if (recordWriter == null) {
+			return;
+		}
+		try {
+			recordWriter.close();
+		} catch (IOException e) {
+			exitWithError("Could not write the game records: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Parses a positive integer command line value, exiting if it is invalid.
+	 * 
+	 * @param value
+	 *            - the value to parse
+	 * @return - the parsed integer
+	 */
+	private static int parsePositiveInteger(String value) {
+		try {
+			int number = Integer.parseInt(value);
+			if (number > 0) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// Handled below.
+		}
+		exitWithError("Expected a positive integer: " + value);
+		return 0; // Unreachable
+	}
+
+	/**
+	 * Parses a non-negative integer command line value, exiting if it is
+	 * invalid.
+	 * 
+	 * @param value
+	 *            - the value to parse
+	 * @return - the parsed integer
+	 */
+	private static int parseNonNegativeInteger(String value) {
+		return value.equals("0") ? 0 : parsePositiveInteger(value);
+	}
+
+	/**
+	 * Parses a search type name, exiting if it is invalid.
+	 * 
+	 * @param name
+	 *            - one of Search.SEARCH_TYPE_NAMES
+	 * @return - the search type
+	 */
+	private static int parseSearchType(String name) {
+		int searchType = Search.getSearchType(name);
+		if (searchType < 0) {
+			exitWithError("Unknown search type: " + name);
+		}
+		return searchType;
+	}
+
+	/**
+	 * Prints an error message and exits with a failure status.
+	 * 
+	 * @param message
+	 *            - the message to print
+	 */
+	private static void exitWithError(String message) {
+		System.out.println(message);
+		System.exit(1);
+	}
+
 	/**
 	 * Verifies valid integer input and without a custom message.
 	 * 
@@ -0,0 +1,253 @@
+package tictactoebot;
+
+/**
+ * Monte Carlo Tree Search with the UCT selection rule. Instead of evaluating
+ * positions with a heuristic, every iteration walks down the tree, adds one
+ * new position to it, finishes the game with random moves (a playout) and
+ * credits the result to every position on the way back up. Moves that win
+ * more playouts get searched more, so the tree grows towards the best lines
+ * without needing any knowledge of the board beyond its rules.
+ * 
+ * Playouts do not touch the board itself. They copy its empty squares and
+ * line counts into arrays owned by the search and play on those, so a playout
+ * allocates nothing and costs one line update per line through each square.
+ * 
+ * One instance grows a single tree and must only be used by one thread. Root
+ * parallel searches run one instance per thread and add up the root moves'
+ * statistics.
+ * 
+ * @author rongil
+ *
+ */
+public class MonteCarloTreeSearch {
+
+	// UCT exploration constant (square root of 2 suits results from 0 to 1).
+	private static final double EXPLORATION = Math.sqrt(2);
+
+	private final Board board; // Private copy, moves made and unmade
+	private final BoardGeometry geometry;
+	private final Node root;
+	// Squares played on the board while walking down the tree.
+	private final int[] path;
+	// Playout state: pieces per line (indexed by player ID and line) and the
+	// empty squares.
+	private final int[][] playoutCounts;
+	private final int[] playoutSquares;
+	private long randomState; // Xorshift state (never zero)
+	private int iterations;
+
+	/**
+	 * Creates a search with an empty tree.
+	 * 
+	 * @param board
+	 *            - the current board
+	 * @param playerID
+	 *            - the player to move
+	 * @param seed
+	 *            - seed of the random playouts
+	 */
+	public MonteCarloTreeSearch(Board board, int playerID, long seed) {
+
+		this.board = new Board(board);
+		geometry = board.getGeometry();
+		path = new int[geometry.getSquares()];
+		playoutCounts = new int[Board.O + 1][geometry.getLines().length];
+		playoutSquares = new int[geometry.getSquares()];
+		randomState = seed == 0 ? 1 : seed;
+
+		// Symmetric root moves lead to equivalent positions, so only one of
+		// each is searched. A finished game has no moves to try.
+		root = new Node(null, TranspositionTable.NO_MOVE, getOtherPlayerID(
+				playerID), this.board);
+		if (root.result == Board.INCOMPLETE) {
+			root.untriedCount = this.board.getDistinctValidSquares(
+					root.untried);
+		}
+
+	}
+
+	/**
+	 * Runs one iteration: selection, expansion, playout and backpropagation.
+	 */
+	public void iterate() {
+
+		// Selection: follow the best children until one has untried moves.
+		Node node = root;
+		int length = 0;
+		while (node.result == Board.INCOMPLETE && node.untriedCount == 0) {
+			node = node.select();
+			board.makeMove(node.square, node.playerID);
+			path[length++] = node.square;
+		}
+
+		// Expansion: add one untried move to the tree.
+		if (node.result == Board.INCOMPLETE) {
+			int index = nextInt(node.untriedCount);
+			int square = node.untried[index];
+			node.untried[index] = node.untried[--node.untriedCount];
+			int playerID = getOtherPlayerID(node.playerID);
+			board.makeMove(square, playerID);
+			path[length++] = square;
+			Node child = new Node(node, square, playerID, board);
+			node.children[node.childCount++] = child;
+			node = child;
+		}
+
+		// Playout, unless the game is already over.
+		int result = node.result;
+		if (result == Board.INCOMPLETE) {
+			result = playout(getOtherPlayerID(node.playerID));
+		}
+
+		// Backpropagation: credit each node to the player who moved into it.
+		for (; node != null; node = node.parent) {
+			++node.visits;
+			if (result == node.playerID) {
+				node.score += 1;
+			} else if (result == Board.TIE) {
+				node.score += 0.5;
+			}
+		}
+
+		while (length > 0) {
+			board.unmakeMove(path[--length]);
+		}
+		++iterations;
+
+	}
+
+	/**
+	 * Plays random moves from the current board until the game ends.
+	 * 
+	 * @param playerID
+	 *            - the player to move
+	 * @return - the result of the game (X, O or TIE)
+	 */
+	private int playout(int playerID) {
+
+		int lines = playoutCounts[Board.X].length;
+		System.arraycopy(board.getLineCounts(Board.X), 0,
+				playoutCounts[Board.X], 0, lines);
+		System.arraycopy(board.getLineCounts(Board.O), 0,
+				playoutCounts[Board.O], 0, lines);
+		int emptyCount = board.getValidSquares(playoutSquares);
+		int winLength = geometry.getWinLength();
+
+		while (emptyCount > 0) {
+			// Take a random empty square, replacing it with the last one.
+			int index = nextInt(emptyCount);
+			int square = playoutSquares[index];
+			playoutSquares[index] = playoutSquares[--emptyCount];
+
+			int[] counts = playoutCounts[playerID];
+			for (int line : geometry.getSquareLines(square)) {
+				if (++counts[line] == winLength) {
+					return playerID;
+				}
+			}
+			playerID = getOtherPlayerID(playerID);
+		}
+		return Board.TIE;
+
+	}
+
+	/**
+	 * Adds the visits and scores of the root moves to running totals.
+	 * 
+	 * @param visits
+	 *            - visits per square, added to
+	 * @param scores
+	 *            - total playout results per square, added to
+	 */
+	public void addRootStatistics(long[] visits, double[] scores) {
+		for (int i = 0; i < root.childCount; ++i) {
+			Node child = root.children[i];
+			visits[child.square] += child.visits;
+			scores[child.square] += child.score;
+		}
+	}
+
+	/**
+	 * Gets the number of iterations run.
+	 * 
+	 * @return - the number of playouts (and positions added to the tree)
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns a random number using xorshift, which is fast and keeps the
+	 * search's random state out of any shared object.
+	 * 
+	 * @param bound
+	 *            - the upper bound (exclusive)
+	 * @return - a number from 0 to bound - 1
+	 */
+	private int nextInt(int bound) {
+		randomState ^= randomState << 13;
+		randomState ^= randomState >>> 7;
+		randomState ^= randomState << 17;
+		return (int) (((randomState >>> 33) * bound) >>> 31);
+	}
+
+	private static int getOtherPlayerID(int playerID) {
+		return playerID == Board.X ? Board.O : Board.X;
+	}
+
+	/**
+	 * A position in the tree, reached by one move from its parent.
+	 */
+	private static final class Node {
+
+		private final Node parent;
+		private final int square; // Square of the move leading here
+		private final int playerID; // Player who made that move
+		private final int result; // Game result, or INCOMPLETE
+		// Moves not yet added to the tree, in the first untriedCount slots.
+		private final int[] untried;
+		private int untriedCount;
+		private final Node[] children;
+		private int childCount;
+		private int visits;
+		private double score; // Playout results for playerID (1 for a win)
+
+		private Node(Node parent, int square, int playerID, Board board) {
+			this.parent = parent;
+			this.square = square;
+			this.playerID = playerID;
+			result = board.checkGameOver();
+			if (result == Board.INCOMPLETE) {
+				untried = new int[board.getGeometry().getSquares()
+						- board.getNumberOfMoves()];
+				untriedCount = board.getValidSquares(untried);
+			} else {
+				untried = new int[0];
+			}
+			children = new Node[untried.length];
+		}
+
+		/**
+		 * Picks the child with the highest upper confidence bound, which
+		 * balances children that score well against rarely tried ones.
+		 * 
+		 * @return - the child to follow
+		 */
+		private Node select() {
+			double logVisits = Math.log(visits);
+			Node bestChild = null;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < childCount; ++i) {
+				Node child = children[i];
+				double value = child.score / child.visits + EXPLORATION
+						* Math.sqrt(logVisits / child.visits);
+				if (value > bestValue) {
+					bestValue = value;
+					bestChild = child;
+				}
+			}
+			return bestChild;
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+package tictactoebot;
+
+import java.util.Arrays;
+
+/**
+ * Orders the moves of each search node so that the moves most likely to cause
+ * a cutoff are searched first, which is what makes alpha-beta pruning
+ * effective. Moves are ordered in stages:
+ * 
+ * 1) The hash move: the best move stored for the position by an earlier
+ * iteration (the principal variation at the root).
+ * 2) Killer moves: moves that recently caused a cutoff at the same ply.
+ * 3) Everything else, by history score: how often (and how deep) each square
+ * caused a cutoff for the player anywhere in the tree.
+ * 
+ * Each scheme enables its stage and all stages before it. One instance holds
+ * per-ply buffers and must only be used by a single search thread.
+ * 
+ * @author rongil
+ *
+ */
+public class MoveOrdering {
+
+	// Ordering schemes.
+	public static final int NONE = 0; // Board order
+	public static final int HASH_MOVE = 1;
+	public static final int KILLERS = 2;
+	public static final int HISTORY = 3;
+
+	// Killer moves remembered per ply.
+	private static final int KILLERS_PER_PLY = 2;
+	// Sort scores of the first two stages, above any history score.
+	private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+	private static final int KILLER_SCORE = Integer.MAX_VALUE - KILLERS_PER_PLY;
+
+	private final int scheme;
+	private final int squares;
+	// Moves and their sort scores, indexed by ply (allocated on first use).
+	private final int[][] moves;
+	private final int[][] scores;
+	// Killer squares, indexed by ply.
+	private final int[][] killers;
+	// History scores, indexed by player ID and square.
+	private final int[][] history;
+
+	/**
+	 * Creates the ordering state for one search thread.
+	 * 
+	 * @param scheme
+	 *            - NONE, HASH_MOVE, KILLERS or HISTORY
+	 * @param geometry
+	 *            - the shape of the board being searched
+	 * @param maxPly
+	 *            - the deepest ply that will be searched
+	 */
+	public MoveOrdering(int scheme, BoardGeometry geometry, int maxPly) {
+		this.scheme = scheme;
+		squares = geometry.getSquares();
+		moves = new int[maxPly + 1][];
+		scores = new int[maxPly + 1][];
+		killers = new int[maxPly + 1][KILLERS_PER_PLY];
+		for (int[] plyKillers : killers) {
+			Arrays.fill(plyKillers, TranspositionTable.NO_MOVE);
+		}
+		history = new int[Board.O + 1][squares];
+	}
+
+	/**
+	 * Gets the scheme in use.
+	 * 
+	 * @return - NONE, HASH_MOVE, KILLERS or HISTORY
+	 */
+	public int getScheme() {
+		return scheme;
+	}
+
+	/**
+	 * Generates and orders the valid moves of a node. The moves are left in
+	 * the buffer returned by getMoves for the same ply.
+	 * 
+	 * @param board
+	 *            - the board at the node
+	 * @param ply
+	 *            - the distance of the node from the root
+	 * @param playerID
+	 *            - the player to move
+	 * @param hashSquare
+	 *            - the square of the hash move, or TranspositionTable.NO_MOVE
+	 * @return - the number of moves
+	 */
+	public int orderMoves(Board board, int ply, int playerID, int hashSquare) {
+
+		if (moves[ply] == null) {
+			moves[ply] = new int[squares];
+			scores[ply] = new int[squares];
+		}
+		int[] plyMoves = moves[ply];
+		int count = board.getValidSquares(plyMoves);
+		if (scheme == NONE) {
+			return count;
+		}
+
+		// Score every move by the first stage that applies to it.
+		int[] plyScores = scores[ply];
+		int[] plyKillers = killers[ply];
+		int[] playerHistory = history[playerID];
+		for (int i = 0; i < count; ++i) {
+			int square = plyMoves[i];
+			if (square == hashSquare) {
+				plyScores[i] = HASH_MOVE_SCORE;
+			} else if (scheme >= KILLERS && square == plyKillers[0]) {
+				plyScores[i] = KILLER_SCORE;
+			} else if (scheme >= KILLERS && square == plyKillers[1]) {
+				plyScores[i] = KILLER_SCORE - 1;
+			} else if (scheme >= HISTORY) {
+				plyScores[i] = playerHistory[square];
+			} else {
+				plyScores[i] = 0;
+			}
+		}
+
+		// Insertion sort by descending score. It is stable, so equal moves
+		// keep board order and the search stays deterministic.
+		for (int i = 1; i < count; ++i) {
+			int square = plyMoves[i];
+			int score = plyScores[i];
+			int j = i - 1;
+			while (j >= 0 && plyScores[j] < score) {
+				plyMoves[j + 1] = plyMoves[j];
+				plyScores[j + 1] = plyScores[j];
+				--j;
+			}
+			plyMoves[j + 1] = square;
+			plyScores[j + 1] = score;
+		}
+		return count;
+
+	}
+
+	/**
+	 * Gets the moves ordered by the last orderMoves call for a ply.
+	 * 
+	 * @param ply
+	 *            - the distance of the node from the root
+	 * @return - the ordered squares
+	 */
+	public int[] getMoves(int ply) {
+		return moves[ply];
+	}
+
+	/**
+	 * Records a move that caused a cutoff, making it a killer at its ply and
+	 * raising its history score.
+	 * 
+	 * @param ply
+	 *            - the distance of the node from the root
+	 * @param playerID
+	 *            - the player who made the move
+	 * @param square
+	 *            - the square of the move
+	 * @param depth
+	 *            - the remaining depth at the node
+	 */
+	public void recordCutoff(int ply, int playerID, int square, int depth) {
+
+		int[] plyKillers = killers[ply];
+		if (plyKillers[0] != square) {
+			plyKillers[1] = plyKillers[0];
+			plyKillers[0] = square;
+		}
+
+		// Deeper cutoffs save more work, so they count for more.
+		int[] playerHistory = history[playerID];
+		playerHistory[square] += depth * depth;
+		if (playerHistory[square] >= KILLER_SCORE - 1) {
+			// Keep history scores below the killer scores.
+			for (int i = 0; i < squares; ++i) {
+				playerHistory[i] /= 2;
+			}
+		}
+
+	}
+
+}
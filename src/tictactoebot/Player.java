@@ -1,11 +1,16 @@
 package tictactoebot;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -101,6 +106,27 @@ public abstract class Player {
 	// Necessary for every player...
 	public abstract Move getMove(Board board);
 
+	/**
+	 * Asks for a move without waiting for it, so one thread can run many
+	 * games. By default the move is got with getMove before returning;
+	 * players whose moves come from elsewhere (an engine thread, or a person
+	 * on another connection) complete the future once the move is known.
+	 * 
+	 * @param board
+	 *            - the current board, left unchanged until the move arrives
+	 * @return - the future move
+	 */
+	public CompletableFuture<Move> requestMove(Board board) {
+		return CompletableFuture.completedFuture(getMove(board));
+	}
+
+	/**
+	 * Abandons a move requested but not made yet, for example because the
+	 * game was ended. Does nothing by default.
+	 */
+	public void cancelMove() {
+	}
+
 	/**
 	 * Implements methods used for a human player.
 	 * 
@@ -109,10 +135,35 @@ public abstract class Player {
 	 */
 	public static class HumanPlayer extends Player {
 
+		// Reads the console for every human player, one prompt at a time, so
+		// waiting for a person never holds up an engine thread.
+		private static final ExecutorService CONSOLE = Executors
+				.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "console");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
 		public HumanPlayer(int player) {
 			super(player, "Human");
 		}
 
+		/**
+		 * Prompts for the move on the console thread.
+		 */
+		@Override
+		public CompletableFuture<Move> requestMove(final Board board) {
+			return CompletableFuture.supplyAsync(new Supplier<Move>() {
+				@Override
+				public Move get() {
+					return getMove(board);
+				}
+			}, CONSOLE);
+		}
+
 		public Move getMove(Board board) {
 
 			final String X_COORDINATE_MESSAGE = "Please type the x coordinate of the next move: ";
@@ -130,48 +181,501 @@ public abstract class Player {
 	}
 
 	/**
-	 * Implements methods used for a computer player. Runs a thread with a
-	 * timeout in order to get a move.
+	 * Implements a human player whose moves arrive from outside the game
+	 * loop, for example over a network connection. A move is requested by
+	 * the game and later supplied with play; no thread waits in between.
+	 * 
+	 * @author rongil
+	 *
+	 */
+	public static class RemotePlayer extends Player {
+
+		// Move requested but not supplied yet (null if none).
+		private CompletableFuture<Move> pendingMove;
+		// Completed once a move is requested, replaced once it is supplied.
+		private CompletableFuture<Void> turn = new CompletableFuture<Void>();
+
+		public RemotePlayer(int player) {
+			super(player, "Human");
+		}
+
+		/**
+		 * Waits for the next move to be supplied with play.
+		 */
+		@Override
+		public Move getMove(Board board) {
+			return requestMove(board).join();
+		}
+
+		@Override
+		public synchronized CompletableFuture<Move> requestMove(Board board) {
+			pendingMove = new CompletableFuture<Move>();
+			turn.complete(null);
+			return pendingMove;
+		}
+
+		/**
+		 * Returns a future completed once the player is asked for a move,
+		 * for example after the opponent replied to the last one. It is
+		 * already completed while a move is requested and not supplied.
+		 * 
+		 * @return - the future turn
+		 */
+		public synchronized CompletableFuture<Void> getTurn() {
+			return turn;
+		}
+
+		/**
+		 * Supplies the move the player chose.
+		 * 
+		 * @param move
+		 *            - the move (checked by the game)
+		 * @return - false if no move was requested
+		 */
+		public boolean play(Move move) {
+			CompletableFuture<Move> requested;
+			synchronized (this) {
+				requested = pendingMove;
+				pendingMove = null;
+				// Replaced before the game goes on, which may ask for the
+				// next move on this thread.
+				if (requested != null) {
+					turn = new CompletableFuture<Void>();
+				}
+			}
+			return requested != null && requested.complete(move);
+		}
+
+		@Override
+		public void cancelMove() {
+			CompletableFuture<Move> requested;
+			synchronized (this) {
+				requested = pendingMove;
+				pendingMove = null;
+			}
+			if (requested != null) {
+				requested.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Implements methods used for a computer player. Runs a search on an
+	 * engine thread with a timeout in order to get a move.
 	 * 
 	 * @author rongil
 	 *
 	 */
 	public static class ComputerPlayer extends Player {
 
+		// Positions searched so far, kept across moves.
+		private final TranspositionTable transpositionTable;
+		// Perfect-play table answering moves without a search (optional).
+		private final Tablebase tablebase;
+		// Threads running the searches.
+		private final Engine engine;
+		// Search method used for every move.
+		private int searchType = Search.NEGAMAX_ALPHA_BETA;
+		// Limits of the next search (clocks run down after every move).
+		private SearchLimits limits = SearchLimits.DEFAULT;
+		// Whether searches skip printing what they are doing.
+		private boolean quiet;
+		// Whether to keep searching while the opponent thinks.
+		private boolean pondering;
+		// Search running on the opponent's time (null if not pondering).
+		private Search ponderSearch;
+		private Board ponderBoard; // Position searched, opponent to move
+		private long ponderStartTime; // System.nanoTime()
+		// Search of a requested move (null if none).
+		private Search moveSearch;
+
 		public ComputerPlayer(int player) {
+			this(player, null);
+		}
+
+		/**
+		 * Creates a computer player that looks moves up in a tablebase and
+		 * only searches for positions the tablebase does not cover.
+		 * 
+		 * @param player
+		 *            - ID of player (O or X)
+		 * @param tablebase
+		 *            - the tablebase to use, or null to always search
+		 */
+		public ComputerPlayer(int player, Tablebase tablebase) {
+			this(player, tablebase, Engine.getShared());
+		}
+
+		/**
+		 * Creates a computer player that searches on the given engine.
+		 * 
+		 * @param player
+		 *            - ID of player (O or X)
+		 * @param tablebase
+		 *            - the tablebase to use, or null to always search
+		 * @param engine
+		 *            - the engine to run searches on
+		 */
+		public ComputerPlayer(int player, Tablebase tablebase, Engine engine) {
+			this(player, tablebase, engine, new TranspositionTable());
+		}
+
+		/**
+		 * Creates a computer player with a transposition table of its own
+		 * choosing, for example a small one when thousands of games are
+		 * played at once.
+		 * 
+		 * @param player
+		 *            - ID of player (O or X)
+		 * @param tablebase
+		 *            - the tablebase to use, or null to always search
+		 * @param engine
+		 *            - the engine to run searches on
+		 * @param transpositionTable
+		 *            - the table kept across this player's moves
+		 */
+		public ComputerPlayer(int player, Tablebase tablebase, Engine engine,
+				TranspositionTable transpositionTable) {
 			super(player, "Computer");
+			this.tablebase = tablebase;
+			this.engine = engine;
+			this.transpositionTable = transpositionTable;
+		}
+
+		/**
+		 * Sets the search method used for the rest of the game.
+		 * 
+		 * @param searchType
+		 *            - one of the search types defined by Search
+		 */
+		public void setSearchType(int searchType) {
+			this.searchType = searchType;
+		}
+
+		public int getSearchType() {
+			return searchType;
+		}
+
+		/**
+		 * Sets how long each move may be searched. A clock is run by the
+		 * player from then on: each move takes off the time it took and adds
+		 * the increment.
+		 * 
+		 * @param limits
+		 *            - the limits (SearchLimits.DEFAULT by default)
+		 */
+		public void setLimits(SearchLimits limits) {
+			this.limits = limits;
+		}
+
+		/**
+		 * @return - the limits of the next move, including the time left on
+		 *         a clock
+		 */
+		public SearchLimits getLimits() {
+			return limits;
+		}
+
+		/**
+		 * Sets whether searches print what they are doing.
+		 * 
+		 * @param quiet
+		 *            - true to print nothing
+		 */
+		public void setQuiet(boolean quiet) {
+			this.quiet = quiet;
+		}
+
+		/**
+		 * Sets whether the player keeps searching on the opponent's time.
+		 * After each move, the position is searched with the opponent to
+		 * move, which fills the transposition table with the best answer to
+		 * every reply. When the actual reply arrives, its search mostly hits
+		 * the table and answers almost at once. Monte Carlo searches keep no
+		 * table, so they do not ponder.
+		 * 
+		 * @param pondering
+		 *            - true to ponder (false by default)
+		 */
+		public void setPondering(boolean pondering) {
+			this.pondering = pondering;
+			if (!pondering) {
+				stopPondering();
+			}
+		}
+
+		/**
+		 * Stops searching on the opponent's time, for example because the
+		 * game is over. Does nothing if the player is not pondering.
+		 */
+		public synchronized void stopPondering() {
+			finishPondering();
 		}
 
 		/**
-		 * Runs a thread to search for the best possible move given a time
-		 * constraint (set by Search.TIMEOUT) for searching.
+		 * Searches for the best possible move on an engine thread given the
+		 * search limits (set by setLimits).
 		 * 
 		 * @param - The current board
-		 * @return - The optimal move found given the time constraint.
+		 * @return - The optimal move found given the limits.
 		 */
-		public Move getMove(Board board) {
+		public synchronized Move getMove(Board board) {
+
+			long startTime = System.nanoTime();
+			Search search = createSearch(board);
+			// A tablebase lookup is instant and already perfect.
+			Move move = lookUp(board);
+			if (move == null) {
+				move = search(search, board);
+			}
+			return finishMove(board, move, startTime);
+		}
+
+		/**
+		 * Searches for the best possible move on an engine thread, like
+		 * getMove, but completes the future from the engine thread instead of
+		 * waiting for the search.
+		 * 
+		 * @param board
+		 *            - The current board, left unchanged until the move
+		 *            arrives
+		 * @return - The future optimal move found given the limits.
+		 */
+		@Override
+		public synchronized CompletableFuture<Move> requestMove(
+				final Board board) {
+
+			final long startTime = System.nanoTime();
+			final Search search = createSearch(board);
+			Move move = lookUp(board);
+			if (move != null) {
+				return CompletableFuture.completedFuture(finishMove(board,
+						move, startTime));
+			}
+
+			moveSearch = search;
+			return engine.submitAsync(search).handle(
+					new BiFunction<Move, Throwable, Move>() {
+						@Override
+						public Move apply(Move bestMove, Throwable failure) {
+							if (failure != null) {
+								logger.log(Level.WARNING, "There was an error "
+										+ "in the execution.\n" + failure);
+								bestMove = search.getBestMove();
+							}
+							synchronized (ComputerPlayer.this) {
+								moveSearch = null;
+								return finishMove(board, bestMove, startTime);
+							}
+						}
+					});
+		}
+
+		/**
+		 * Stops the search of a requested move, which then completes with the
+		 * best move found so far, and stops pondering.
+		 */
+		@Override
+		public synchronized void cancelMove() {
+			if (moveSearch != null) {
+				moveSearch.stop();
+			}
+			pondering = false;
+			finishPondering();
+		}
+
+		/**
+		 * Stops pondering and creates the search for a move, crediting it
+		 * with the pondering if the opponent played the move pondered on.
+		 * 
+		 * @param board
+		 *            - The current board
+		 * @return - the search, ready to be submitted
+		 */
+		private Search createSearch(Board board) {
+
+			// The pondering only helps if the opponent replied to the
+			// position pondered on.
+			boolean pondered = ponderSearch != null && isReplyTo(ponderBoard,
+					board);
+			long ponderTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+					- ponderStartTime);
+			int ponderDepth = finishPondering();
+			if (pondered && !quiet) {
+				System.out.println("Pondered to depth " + ponderDepth + " in "
+						+ ponderTime + " ms.");
+			}
+
+			// Creates new search task (which implements iterative deepening).
+			Search search = new Search(board, this, transpositionTable);
+			search.setSearchType(searchType);
+			search.setLimits(limits);
+			if (pondered) {
+				// Results for the reply are one level shallower.
+				search.setPondered(ponderDepth - 1, ponderTime);
+			}
+			search.setQuiet(quiet);
+			search.setSearchPool(engine.getSearchPool());
+			return search;
+		}
+
+		/**
+		 * Checks whether a board is another one after a single move by the
+		 * opponent.
+		 * 
+		 * @param previous
+		 *            - the earlier board, with the opponent to move
+		 * @param board
+		 *            - the current board
+		 * @return - true if the boards differ only by one opponent piece
+		 */
+		private boolean isReplyTo(Board previous, Board board) {
+			if (board.getGeometry() != previous.getGeometry()
+					|| board.getNumberOfMoves() != previous
+							.getNumberOfMoves() + 1) {
+				return false;
+			}
+			for (int square = 0; square < board.getGeometry().getSquares();
+					++square) {
+				// Earlier pieces stay, and the new one is the opponent's.
+				int value = previous.getSquareValue(square);
+				int current = board.getSquareValue(square);
+				if (value != Board.EMPTY ? current != value
+						: current == getPlayerID()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Looks the move up in the tablebase, if it covers the board.
+		 * 
+		 * @param board
+		 *            - The current board
+		 * @return - the perfect move, or null if there is none
+		 */
+		private Move lookUp(Board board) {
+			if (tablebase != null && tablebase.covers(board)) {
+				return tablebase.getBestMove(board, getPlayerID());
+			}
+			return null;
+		}
+
+		/**
+		 * Runs the clock and starts pondering once a move is chosen.
+		 * 
+		 * @param board
+		 *            - the board before the move
+		 * @param move
+		 *            - the move chosen
+		 * @param startTime
+		 *            - when the move was requested (System.nanoTime())
+		 * @return - the move
+		 */
+		private Move finishMove(Board board, Move move, long startTime) {
+			// Only the time the opponent waited counts against the clock.
+			limits = limits.afterMove(TimeUnit.NANOSECONDS.toMillis(System
+					.nanoTime() - startTime));
+			if (pondering) {
+				startPondering(board, move);
+			}
+			return move;
+		}
+
+		/**
+		 * Starts searching the position after a move on an engine thread,
+		 * with the opponent to move and no limit, until the opponent replies.
+		 * 
+		 * @param board
+		 *            - the board before the move
+		 * @param move
+		 *            - the move about to be played
+		 */
+		private void startPondering(Board board, Move move) {
+			Board ponderBoard = board.testMove(move, getPlayerID());
+			if (searchType == Search.MONTE_CARLO_TREE_SEARCH
+					|| ponderBoard.checkGameOver() != Board.INCOMPLETE) {
+				return;
+			}
+
+			// The search plays the opponent. It only fills the table, so it
+			// is not recorded as a search answering a move.
+			ponderSearch = new Search(ponderBoard, getOtherPlayerID(),
+					transpositionTable);
+			ponderSearch.setSearchType(searchType);
+			ponderSearch.setLimits(SearchLimits.INFINITE);
+			ponderSearch.setQuiet(true);
+			ponderSearch.setRecorded(false);
+			ponderSearch.setSearchPool(engine.getSearchPool());
+			this.ponderBoard = ponderBoard;
+			ponderStartTime = System.nanoTime();
+			engine.submitAsync(ponderSearch).exceptionally(
+					new Function<Throwable, Move>() {
+						@Override
+						public Move apply(Throwable failure) {
+							logger.log(Level.WARNING, "There was an error "
+									+ "while pondering.\n" + failure);
+							return null;
+						}
+					});
+		}
+
+		/**
+		 * Stops the ponder search, if any, without waiting for it. It
+		 * unwinds on its engine thread within a few thousand nodes, while the
+		 * results it stored stay in the transposition table.
+		 * 
+		 * @return - the depth of its last completed iteration (0 if none)
+		 */
+		private int finishPondering() {
+			if (ponderSearch == null) {
+				return 0;
+			}
+			ponderSearch.stop();
+			int ponderDepth = ponderSearch.getCompletedDepth();
+			ponderSearch = null;
+			ponderBoard = null;
+			return ponderDepth;
+		}
+
+		/**
+		 * Runs a search on an engine thread, waiting no longer than the hard
+		 * time limit.
+		 * 
+		 * @param search
+		 *            - the search, created by createSearch
+		 * @param board
+		 *            - The current board
+		 * @return - The optimal move found given the limits.
+		 */
+		private Move search(Search search, Board board) {
 
-			// The executor to run the thread for the optimal move search.
-			ExecutorService executor = Executors.newSingleThreadExecutor();
-			// Creates new search task (which implements iterative deepening)
-			Search search = new Search(board, this);
-			Future<Move> future = executor.submit(search);
+			Future<Move> future = engine.submit(search);
 
 			Move bestMove;
+			long hardTimeLimit = limits.getHardTimeLimit(board);
 			try {
-				bestMove = future.get(Search.TIMEOUT, TimeUnit.SECONDS);
+				if (hardTimeLimit == SearchLimits.UNLIMITED) {
+					bestMove = future.get();
+				} else {
+					bestMove = future.get(hardTimeLimit, TimeUnit.MILLISECONDS);
+				}
 			} catch (TimeoutException e) {
 				bestMove = search.getBestMove();
 			} catch (InterruptedException e) {
 				logger.log(Level.WARNING,
 						"The thread was interrupted.\n" + e.toString());
 				bestMove = search.getBestMove();
+				Thread.currentThread().interrupt();
 			} catch (ExecutionException e) {
 				logger.log(Level.WARNING,
 						"There was an error in the execution.\n" + e.toString());
 				bestMove = search.getBestMove();
 			}
-			executor.shutdownNow();
+			// Make sure an unfinished search stops using the CPU.
+			search.stop();
+			future.cancel(true);
 
 			return bestMove;
 		}
@@ -0,0 +1,663 @@
+package tictactoebot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tictactoebot.Board.Move;
+import tictactoebot.Player.ComputerPlayer;
+import tictactoebot.Player.RemotePlayer;
+
+/**
+ * A line-oriented text protocol, modelled on chess engines' UCI, that lets
+ * programs drive the engine: set up a position, search it with limits and
+ * read back the best move and search statistics. Nothing is rendered, and
+ * answers are only flushed once the driver has no more commands queued, so
+ * one process can answer thousands of positions per second.
+ * 
+ * Squares are written as a column letter and a row number, both counted from
+ * the top left corner (a1 is square (0, 0), c2 is (2, 1)). X always moves
+ * first. The commands are:
+ * 
+ * <pre>
+ * uci                              Identifies the engine and its options
+ * isready                          Answers readyok
+ * setoption name Board value W,H,K Sets the board size (3,3,3)
+ * setoption name SearchType value TYPE
+ *                                  minimax, negamax (default), pvs or mcts
+ * ucinewgame                       Forgets earlier searches
+ * position startpos [moves SQUARE...]
+ *                                  Sets the position from the empty board
+ * go [movetime MS] [xtime MS] [otime MS] [xinc MS] [oinc MS] [depth N]
+ *    [nodes N] [infinite]          Searches the position, then answers with
+ *                                  an info line and bestmove SQUARE (or
+ *                                  bestmove (none) if the game is over)
+ * stop                             Ends a search started with go infinite
+ *                                  (or with no limits)
+ * game new                         Starts a game against the engine on the
+ *                                  current board with the current search
+ *                                  type (hosted games only)
+ * game ID move SQUARE              Plays a move in a hosted game
+ * game ID show                     Shows a hosted game
+ * game ID end                      Ends a hosted game
+ * quit                             Exits
+ * </pre>
+ * 
+ * A search with limits is answered before the next command is read; an
+ * infinite search runs until the next command other than isready. Invalid
+ * commands are answered with an info string line and otherwise ignored.
+ * 
+ * Given a SessionManager, the session can also play games hosted by it,
+ * which outlive the session and can be resumed from any other session that
+ * knows the game's ID. The side and who moves first are chosen at random.
+ * Every valid game command is answered once it is the client's turn or the
+ * game is over, with the line:
+ * 
+ * <pre>
+ * game ID player X|O first X|O status playing|x|o|draw|aborted moves SQUARE...
+ * </pre>
+ * 
+ * @author rongil
+ *
+ */
+public class Protocol {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Identification
+	private static final String NAME = "TicTacToe Bot";
+	private static final String AUTHOR = "rongil";
+	// Answer when a position has no move to play.
+	private static final String NO_MOVE = "(none)";
+	// Time the engine takes per move in hosted games, in milliseconds.
+	private static final long GAME_MOVE_TIME = 1000;
+	// Transposition table entries of the engine in each hosted game.
+	private static final int GAME_TABLE_SIZE = 1 << 10;
+
+	private final Engine engine;
+	// Positions searched so far, kept until ucinewgame.
+	private final TranspositionTable transpositionTable =
+			new TranspositionTable();
+	private BoardGeometry geometry = BoardGeometry.STANDARD;
+	private int searchType = Search.NEGAMAX_ALPHA_BETA;
+	private Board board = new Board(geometry);
+	// Longest any search may run, in milliseconds.
+	private long maxSearchTime = SearchLimits.UNLIMITED;
+	// Search running until stopped (null if none).
+	private Search infiniteSearch;
+	private Future<Move> infiniteFuture;
+	// Host of games played through the protocol (null if none).
+	private SessionManager sessionManager;
+
+	/**
+	 * Creates a protocol session in its initial state: an empty 3x3 board and
+	 * negamax searches.
+	 * 
+	 * @param engine
+	 *            - the engine running the searches
+	 */
+	public Protocol(Engine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Caps the time of every search, whatever limits go asks for, so one
+	 * driver cannot hold an engine thread indefinitely. Searches without
+	 * limits then search for this time and answer without waiting for stop.
+	 * 
+	 * @param maxSearchTime
+	 *            - the longest time in milliseconds (unlimited by default)
+	 */
+	public void setMaxSearchTime(long maxSearchTime) {
+		this.maxSearchTime = maxSearchTime;
+	}
+
+	/**
+	 * Lets the session play games hosted by a session manager, shared with
+	 * other sessions.
+	 * 
+	 * @param sessionManager
+	 *            - the host of the games, or null for no games (by default)
+	 */
+	public void setSessionManager(SessionManager sessionManager) {
+		this.sessionManager = sessionManager;
+	}
+
+	/**
+	 * Reads and answers commands until quit or the end of the input.
+	 * 
+	 * @param input
+	 *            - the commands
+	 * @param output
+	 *            - where answers are written
+	 * @throws IOException
+	 *             - if reading or writing fails
+	 */
+	public void run(BufferedReader input, Writer output) throws IOException {
+		String line;
+		while ((line = input.readLine()) != null) {
+			if (!handle(line, output)) {
+				break;
+			}
+			// Answer a batch of commands with a single write.
+			if (!input.ready()) {
+				output.flush();
+			}
+		}
+		if (infiniteSearch != null) {
+			infiniteSearch.stop();
+		}
+		output.flush();
+	}
+
+	/**
+	 * Carries out one command, writing its answer (without flushing).
+	 * 
+	 * @param line
+	 *            - the command line
+	 * @param output
+	 *            - where the answer is written
+	 * @return - false if the command was quit
+	 * @throws IOException
+	 *             - if writing fails
+	 */
+	public boolean handle(String line, Writer output) throws IOException {
+
+		String[] tokens = line.trim().split("\\s+");
+		String command = tokens[0];
+		if (command.isEmpty()) {
+			return true;
+		}
+
+		// Any command but isready ends an infinite search.
+		if (infiniteSearch != null && !command.equals("isready")) {
+			Search search = infiniteSearch;
+			infiniteSearch = null;
+			search.stop();
+			writeResult(search, infiniteFuture, output);
+			infiniteFuture = null;
+			if (command.equals("stop")) {
+				return true;
+			}
+		}
+
+		if (command.equals("uci")) {
+			output.write("id name " + NAME + "\n");
+			output.write("id author " + AUTHOR + "\n");
+			output.write("option name Board type string default "
+					+ formatGeometry(BoardGeometry.STANDARD) + "\n");
+			output.write("option name SearchType type combo default "
+					+ Search.SEARCH_TYPE_NAMES[Search.NEGAMAX_ALPHA_BETA]);
+			for (String name : Search.SEARCH_TYPE_NAMES) {
+				output.write(" var " + name);
+			}
+			output.write("\nuciok\n");
+		} else if (command.equals("isready")) {
+			output.write("readyok\n");
+		} else if (command.equals("setoption")) {
+			setOption(tokens, output);
+		} else if (command.equals("ucinewgame")) {
+			transpositionTable.clear();
+			board = new Board(geometry);
+		} else if (command.equals("position")) {
+			setPosition(tokens, output);
+		} else if (command.equals("go")) {
+			go(tokens, output);
+		} else if (command.equals("stop")) {
+			// No search is running.
+		} else if (command.equals("game")) {
+			playGame(tokens, output);
+		} else if (command.equals("quit")) {
+			return false;
+		} else {
+			writeError(output, "Unknown command: " + command);
+		}
+		return true;
+
+	}
+
+	/**
+	 * Carries out setoption name NAME value VALUE.
+	 */
+	private void setOption(String[] tokens, Writer output)
+			throws IOException {
+
+		if (tokens.length != 5 || !tokens[1].equals("name")
+				|| !tokens[3].equals("value")) {
+			writeError(output, "Expected setoption name NAME value VALUE");
+			return;
+		}
+
+		String name = tokens[2];
+		String value = tokens[4];
+		if (name.equals("Board")) {
+			String[] size = value.split(",");
+			try {
+				if (size.length != 3) {
+					throw new IllegalArgumentException("Expected W,H,K: "
+							+ value);
+				}
+				geometry = BoardGeometry.of(Integer.parseInt(size[0]),
+						Integer.parseInt(size[1]), Integer.parseInt(size[2]));
+			} catch (IllegalArgumentException e) {
+				// Also catches NumberFormatException.
+				writeError(output, e.getMessage());
+				return;
+			}
+			// Searches of another board size are no use.
+			transpositionTable.clear();
+			board = new Board(geometry);
+		} else if (name.equals("SearchType")) {
+			int type = Search.getSearchType(value);
+			if (type < 0) {
+				writeError(output, "Unknown search type: " + value);
+				return;
+			}
+			searchType = type;
+		} else {
+			writeError(output, "Unknown option: " + name);
+		}
+
+	}
+
+	/**
+	 * Carries out position startpos [moves SQUARE...]. The position is left
+	 * unchanged if any move is invalid.
+	 */
+	private void setPosition(String[] tokens, Writer output)
+			throws IOException {
+
+		if (tokens.length < 2 || !tokens[1].equals("startpos")
+				|| (tokens.length > 2 && !tokens[2].equals("moves"))) {
+			writeError(output, "Expected position startpos [moves ...]");
+			return;
+		}
+
+		Board newBoard = new Board(geometry);
+		for (int i = 3; i < tokens.length; ++i) {
+			int square = parseSquare(tokens[i]);
+			if (square == Board.NO_SQUARE
+					|| newBoard.getSquareValue(square) != Board.EMPTY
+					|| newBoard.checkGameOver() != Board.INCOMPLETE) {
+				writeError(output, "Invalid move: " + tokens[i]);
+				return;
+			}
+			newBoard.makeMove(square, getPlayerToMove(newBoard));
+		}
+		board = newBoard;
+
+	}
+
+	/**
+	 * Carries out go, searching with the limits given. Without any limits,
+	 * the search runs until stopped.
+	 */
+	private void go(String[] tokens, Writer output) throws IOException {
+
+		long[] clockTimes = new long[Board.O + 1];
+		long[] increments = new long[Board.O + 1];
+		SearchLimits limits = null;
+		try {
+			for (int i = 1; i < tokens.length; ++i) {
+				String name = tokens[i];
+				if (name.equals("infinite")) {
+					limits = SearchLimits.INFINITE;
+					continue;
+				}
+				if (i + 1 == tokens.length) {
+					throw new IllegalArgumentException("Missing value: "
+							+ name);
+				}
+				long value = Long.parseLong(tokens[++i]);
+				if (value < 1 || (name.equals("depth")
+						&& value > Integer.MAX_VALUE)) {
+					throw new IllegalArgumentException("Invalid " + name
+							+ ": " + value);
+				}
+				if (name.equals("movetime")) {
+					limits = SearchLimits.moveTime(value);
+				} else if (name.equals("depth")) {
+					limits = SearchLimits.depth((int) value);
+				} else if (name.equals("nodes")) {
+					limits = SearchLimits.nodes(value);
+				} else if (name.equals("xtime")) {
+					clockTimes[Board.X] = value;
+				} else if (name.equals("otime")) {
+					clockTimes[Board.O] = value;
+				} else if (name.equals("xinc")) {
+					increments[Board.X] = value;
+				} else if (name.equals("oinc")) {
+					increments[Board.O] = value;
+				} else {
+					throw new IllegalArgumentException("Unknown limit: "
+							+ name);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// Also catches NumberFormatException.
+			writeError(output, e.getMessage());
+			return;
+		}
+
+		if (board.checkGameOver() != Board.INCOMPLETE) {
+			output.write("bestmove " + NO_MOVE + "\n");
+			return;
+		}
+		int playerID = getPlayerToMove(board);
+		if (limits == null && clockTimes[playerID] > 0) {
+			limits = SearchLimits.clock(clockTimes[playerID],
+					increments[playerID]);
+		} else if (limits == null) {
+			limits = SearchLimits.INFINITE;
+		}
+		if (limits == SearchLimits.INFINITE
+				&& maxSearchTime != SearchLimits.UNLIMITED) {
+			limits = SearchLimits.moveTime(maxSearchTime);
+		}
+
+		Search search = new Search(board, playerID, transpositionTable);
+		search.setSearchType(searchType);
+		search.setLimits(limits);
+		search.setQuiet(true);
+		search.setSearchPool(engine.getSearchPool());
+		Future<Move> future = engine.submit(search);
+		if (limits == SearchLimits.INFINITE) {
+			// Answered once stopped.
+			infiniteSearch = search;
+			infiniteFuture = future;
+		} else {
+			writeResult(search, future, output);
+		}
+
+	}
+
+	/**
+	 * Waits for a search to finish and writes its statistics and best move.
+	 * 
+	 * @param search
+	 *            - the search
+	 * @param future
+	 *            - the search's future result
+	 * @param output
+	 *            - where the result is written
+	 * @throws IOException
+	 *             - if writing fails
+	 */
+	private void writeResult(Search search, Future<Move> future, Writer output)
+			throws IOException {
+
+		try {
+			if (maxSearchTime == SearchLimits.UNLIMITED) {
+				future.get();
+			} else {
+				future.get(maxSearchTime, TimeUnit.MILLISECONDS);
+			}
+		} catch (TimeoutException e) {
+			// Keep the last completed iteration.
+			search.stop();
+			waitForSearch(future);
+		} catch (InterruptedException e) {
+			search.stop();
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.log(Level.WARNING, "There was an error in the execution.\n"
+					+ e.toString());
+		}
+
+		SearchMetrics metrics = search.getMetrics();
+		if (metrics != null) {
+			output.write("info depth " + metrics.getDepth() + " nodes "
+					+ metrics.getNodes() + " time "
+					+ metrics.getElapsedTime() / 1000 + " nps "
+					+ metrics.getNodesPerSecond() + " score "
+					+ search.getBestValue() + "\n");
+		}
+
+		int square = board.toSquare(search.getBestMove());
+		output.write("bestmove " + formatSquare(geometry, square) + "\n");
+
+	}
+
+	/**
+	 * Carries out game new, game ID move SQUARE, game ID show and game ID
+	 * end.
+	 */
+	private void playGame(String[] tokens, Writer output) throws IOException {
+
+		if (sessionManager == null) {
+			writeError(output, "No games are hosted");
+			return;
+		}
+		if (tokens.length == 2 && tokens[1].equals("new")) {
+			startGame(output);
+			return;
+		}
+
+		Game game = null;
+		if (tokens.length >= 3) {
+			try {
+				game = sessionManager.getGame(Long.parseLong(tokens[1]));
+			} catch (NumberFormatException e) {
+				// Handled below.
+			}
+		}
+		if (game == null) {
+			writeError(output, "Expected game new or game ID move|show|end");
+			return;
+		}
+
+		String action = tokens[2];
+		if (action.equals("move") && tokens.length == 4) {
+			RemotePlayer player = getRemotePlayer(game);
+			Board gameBoard = game.getBoard();
+			int square = parseSquare(gameBoard.getGeometry(), tokens[3]);
+			if (game.getState() != Game.WAITING
+					|| game.getPlayerToMove() != player) {
+				writeError(output, "Not your turn");
+				return;
+			} else if (square == Board.NO_SQUARE
+					|| gameBoard.getSquareValue(square) != Board.EMPTY) {
+				writeError(output, "Invalid move: " + tokens[3]);
+				return;
+			} else if (player.play(gameBoard.getMove(square))) {
+				awaitTurn(game, player);
+			}
+		} else if (action.equals("end") && tokens.length == 3) {
+			sessionManager.removeGame(game.getID());
+		} else if (!action.equals("show") || tokens.length != 3) {
+			writeError(output, "Expected game ID move SQUARE, show or end");
+			return;
+		}
+		writeGame(game, output);
+
+	}
+
+	/**
+	 * Starts a hosted game between the client and the engine, answering once
+	 * it is the client's turn.
+	 */
+	private void startGame(Writer output) throws IOException {
+
+		int playerID = ThreadLocalRandom.current().nextBoolean() ? Board.X
+				: Board.O;
+		RemotePlayer player = new RemotePlayer(playerID);
+		ComputerPlayer computerPlayer = new ComputerPlayer(
+				player.getOtherPlayerID(), null, engine,
+				new TranspositionTable(GAME_TABLE_SIZE));
+		computerPlayer.setSearchType(searchType);
+		computerPlayer.setLimits(SearchLimits.moveTime(Math.min(
+				GAME_MOVE_TIME, maxSearchTime)));
+		computerPlayer.setQuiet(true);
+
+		Game game = sessionManager.createGame(player, computerPlayer,
+				new Board(geometry));
+		awaitTurn(game, player);
+		writeGame(game, output);
+
+	}
+
+	/**
+	 * Waits until a hosted game asks the client for a move or ends. The
+	 * engine's moves are limited in time, so this never takes long.
+	 */
+	private void awaitTurn(Game game, RemotePlayer player) {
+		try {
+			CompletableFuture.anyOf(player.getTurn(), game.getOutcome())
+					.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// The game failed, which its status shows.
+		} catch (CancellationException e) {
+			// The game was aborted, which its status shows.
+		}
+	}
+
+	/**
+	 * Finds the client's player in a hosted game.
+	 */
+	private static RemotePlayer getRemotePlayer(Game game) {
+		Player player = game.getPlayer(Board.X);
+		return (RemotePlayer) (player instanceof RemotePlayer ? player : game
+				.getPlayer(Board.O));
+	}
+
+	/**
+	 * Writes the status line of a hosted game.
+	 */
+	private static void writeGame(Game game, Writer output)
+			throws IOException {
+
+		String status;
+		int state = game.getState();
+		if (state == Game.ABORTED) {
+			status = "aborted";
+		} else if (state != Game.OVER) {
+			status = "playing";
+		} else if (game.getResult() == Board.TIE) {
+			status = "draw";
+		} else {
+			status = formatPlayer(game.getResult());
+		}
+
+		BoardGeometry geometry = game.getBoard().getGeometry();
+		output.write("game " + game.getID() + " player "
+				+ formatPlayer(getRemotePlayer(game).getPlayerID())
+				+ " first " + formatPlayer(game.getFirstPlayer()) + " status "
+				+ status + " moves");
+		for (int square : game.getSquares()) {
+			output.write(" " + formatSquare(geometry, square));
+		}
+		output.write("\n");
+
+	}
+
+	/**
+	 * Formats a player ID as x or o.
+	 */
+	private static String formatPlayer(int playerID) {
+		return playerID == Board.X ? "x" : "o";
+	}
+
+	/**
+	 * Waits for a stopped search to unwind, which takes at most a few
+	 * thousand nodes.
+	 */
+	private void waitForSearch(Future<Move> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.log(Level.WARNING, "There was an error in the execution.\n"
+					+ e.toString());
+		}
+	}
+
+	/**
+	 * Writes an error as an info string line.
+	 */
+	private static void writeError(Writer output, String message)
+			throws IOException {
+		output.write("info string " + message + "\n");
+	}
+
+	/**
+	 * Gets the player to move, given that X moves first.
+	 * 
+	 * @return - the player ID (O or X)
+	 */
+	private static int getPlayerToMove(Board board) {
+		return board.getNumberOfMoves() % 2 == 0 ? Board.X : Board.O;
+	}
+
+	/**
+	 * Parses a square such as c2 on the current board.
+	 * 
+	 * @param text
+	 *            - a column letter and a row number
+	 * @return - the square index, or Board.NO_SQUARE if invalid
+	 */
+	private int parseSquare(String text) {
+		return parseSquare(geometry, text);
+	}
+
+	/**
+	 * Parses a square such as c2.
+	 * 
+	 * @param geometry
+	 *            - the shape of the board
+	 * @param text
+	 *            - a column letter and a row number
+	 * @return - the square index, or Board.NO_SQUARE if invalid
+	 */
+	private static int parseSquare(BoardGeometry geometry, String text) {
+		if (text.length() < 2) {
+			return Board.NO_SQUARE;
+		}
+		int x = text.charAt(0) - 'a';
+		int y;
+		try {
+			y = Integer.parseInt(text.substring(1)) - 1;
+		} catch (NumberFormatException e) {
+			return Board.NO_SQUARE;
+		}
+		return geometry.contains(x, y) ? geometry.toSquare(x, y)
+				: Board.NO_SQUARE;
+	}
+
+	/**
+	 * Formats a square, such as c2.
+	 * 
+	 * @param geometry
+	 *            - the shape of the board
+	 * @param square
+	 *            - the square index, or Board.NO_SQUARE
+	 * @return - the square's name
+	 */
+	static String formatSquare(BoardGeometry geometry, int square) {
+		if (square == Board.NO_SQUARE) {
+			return NO_MOVE;
+		}
+		Move move = geometry.getMove(square);
+		return (char) ('a' + move.getX()) + Integer.toString(move.getY() + 1);
+	}
+
+	/**
+	 * Formats a board size as W,H,K.
+	 */
+	private static String formatGeometry(BoardGeometry geometry) {
+		return geometry.getWidth() + "," + geometry.getHeight() + ","
+				+ geometry.getWinLength();
+	}
+
+}
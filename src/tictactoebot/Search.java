@@ -1,7 +1,13 @@
 package tictactoebot;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import tictactoebot.Board.Move;
 
@@ -9,29 +15,109 @@ import tictactoebot.Board.Move;
  * Contains all implemented search methods. Runs iterative deepening and
  * implements the callable interface to allow for an easily timed out execution.
  * 
+ * The search polls a stop flag, thread interruption and its deadline every few
+ * thousand nodes and unwinds as soon as any of them is set. Only results of
+ * fully completed iterations are published, through volatile fields, so they
+ * can safely be read from another thread at any time.
+ * 
+ * Given a fork/join pool, NegaMax searches the root in parallel using "young
+ * brothers wait": the first root move is searched alone to get a score to
+ * beat, then the remaining moves are searched concurrently, each on its own
+ * board, sharing the best score found so far. Without a pool the search is
+ * single-threaded and deterministic.
+ * 
+ * Principal Variation Search is NegaMax that assumes the first move at each
+ * node is the best: the other moves are searched with a null window that only
+ * proves they are no better, and re-searched with the full window when that
+ * proof fails. Each iteration starts with an aspiration window around the
+ * previous iteration's score, widened if the score falls outside it.
+ * 
+ * Monte Carlo Tree Search does not deepen iteratively: it runs random playouts
+ * until the time runs out and plays the most visited root move. Given a
+ * fork/join pool, every thread grows its own tree and the root statistics of
+ * all trees are added up.
+ * 
+ * Moves are searched in the order given by MoveOrdering: the previous best
+ * move first, then killer moves, then by history score. Good ordering lets
+ * the first move cause most cutoffs, which the search counts so the effect of
+ * each ordering scheme can be measured.
+ * 
  * @author rongil
  *
  */
 public class Search implements Callable<Move> {
 
-	// Timeout
-	public static final int TIMEOUT = 5; // Seconds
-	// Initial Depth
-	private static final int INITIAL_DEPTH = 3;
+	// Initial Depth (low so that wide boards complete an iteration quickly)
+	private static final int INITIAL_DEPTH = 1;
+	// Nodes between checks for a stop request (must be a power of two).
+	private static final int STOP_CHECK_INTERVAL = 1024;
+	// Monte Carlo playouts between checks for a stop request.
+	private static final int PLAYOUT_CHECK_INTERVAL = 64;
+
+	// Bound larger than any score, safe to negate (unlike Integer.MIN_VALUE).
+	private static final int INFINITY = 1000000;
+	// Score of a win, before subtracting the number of moves played. Far
+	// above any heuristic value, even on the largest boards.
+	private static final int WIN = 100000;
+	// Distance of the aspiration window's bounds from the previous score.
+	private static final int ASPIRATION_WINDOW = 8;
 
 	// Search types
-	private static final int MINIMAX_ALPHA_BETA = 0;
-	private static final int NEGAMAX_ALPHA_BETA = 1;
+	public static final int MINIMAX_ALPHA_BETA = 0;
+	public static final int NEGAMAX_ALPHA_BETA = 1;
+	public static final int PRINCIPAL_VARIATION = 2;
+	public static final int MONTE_CARLO_TREE_SEARCH = 3;
+	// Short names of the search types, indexed by search type.
+	public static final String[] SEARCH_TYPE_NAMES = { "minimax", "negamax",
+			"pvs", "mcts" };
 
 	// Actual search method used.
-	// Can be made variable during runtime in the future.
-	private static final int searchType = NEGAMAX_ALPHA_BETA;
+	private int searchType = NEGAMAX_ALPHA_BETA;
+	// Time, depth or nodes the search may use.
+	private SearchLimits limits = SearchLimits.DEFAULT;
+	// Depth and time (in milliseconds) already spent on this move while
+	// pondering.
+	private int ponderDepth;
+	private long ponderTime;
+
+	// Results of the last completed iteration, read by other threads.
+	private volatile Move bestMove;
+	private volatile int bestValue; // Score of bestMove for searching player
+	private volatile int completedDepth; // Depth of the last iteration
+	private volatile boolean stopRequested;
+	private boolean quiet; // Whether to skip printing the search method
+	private boolean recorded = true; // Whether to add to EngineMetrics
+	private ForkJoinPool searchPool; // Pool for parallel root moves (or null)
+	private int moveOrdering = MoveOrdering.HISTORY; // Ordering scheme
+	private final Search root; // Search whose stop flag is obeyed
+	// Square played if no iteration completed, or Board.NO_SQUARE.
+	private final int fallbackSquare;
 
 	// State variables
-	private Move bestMove;
+	private int iterationValue; // Score of the current iteration's best move
 	private int currentMaxDepth;
-	private Board originalBoard;
-	private Player player;
+	private long deadline; // System.nanoTime() at which to stop
+	// System.nanoTime() after which no new iteration starts.
+	private long softDeadline;
+	private long nodeLimit = Long.MAX_VALUE; // Nodes at which to stop
+	private MoveOrdering ordering;
+	private int[] rootSquares; // Distinct root moves in search order
+	// Statistics, counted by each thread on its own search and added up
+	// once helpers finish.
+	private long nodes;
+	private long leaves;
+	private long betaCutoffs;
+	private long firstMoveCutoffs; // Cutoffs caused by the first move searched
+	private long transpositionProbes;
+	private long transpositionHits;
+	private final List<Long> iterationTimes = new ArrayList<Long>(); // Micros
+	private long iterationStartTime; // System.nanoTime()
+	private SearchMetrics metrics;
+	// Set when part of the current iteration was cut off by the depth limit.
+	private boolean depthLimited;
+	private Board board; // Private copy mutated in place while searching
+	private final int rootPlayerID; // The player searching for a move
+	private TranspositionTable transpositionTable;
 
 	/**
 	 * Initializes a new search by setting the board, player, and starting
@@ -43,78 +129,563 @@ public class Search implements Callable<Move> {
 	 *            - the player searching for a move
 	 */
 	public Search(Board board, Player player) {
-		this.originalBoard = board;
-		this.player = player;
+		this(board, player, new TranspositionTable());
+	}
+
+	/**
+	 * Initializes a new search that shares a transposition table, so results
+	 * from earlier searches (and earlier deepening iterations) are reused.
+	 * 
+	 * @param board
+	 *            - the current board
+	 * @param player
+	 *            - the player searching for a move
+	 * @param transpositionTable
+	 *            - the table of previously searched positions
+	 */
+	public Search(Board board, Player player,
+			TranspositionTable transpositionTable) {
+		this(board, player.getPlayerID(), transpositionTable);
+	}
+
+	/**
+	 * Initializes a new search for a side rather than a player, for searches
+	 * that play no game of their own, such as analysis and pondering.
+	 * 
+	 * @param board
+	 *            - the current board
+	 * @param playerID
+	 *            - the ID of the player to move (O or X)
+	 * @param transpositionTable
+	 *            - the table of previously searched positions
+	 */
+	public Search(Board board, int playerID,
+			TranspositionTable transpositionTable) {
+		this.board = new Board(board);
+		this.rootPlayerID = playerID;
+		this.transpositionTable = transpositionTable;
+		this.root = this;
+		this.fallbackSquare = board.checkGameOver() == Board.INCOMPLETE ? board
+				.getNextValidSquare(0) : Board.NO_SQUARE;
 
 		currentMaxDepth = INITIAL_DEPTH;
 	}
 
+	/**
+	 * Initializes a helper that searches one root move of a parallel search.
+	 * It works on its own copy of the root board and stops with the root.
+	 * 
+	 * @param root
+	 *            - the search being helped
+	 */
+	private Search(Search root) {
+		this.board = new Board(root.board);
+		this.rootPlayerID = root.rootPlayerID;
+		this.transpositionTable = root.transpositionTable;
+		this.root = root;
+		this.fallbackSquare = root.fallbackSquare;
+		this.deadline = root.deadline;
+		this.nodeLimit = root.nodeLimit;
+		this.currentMaxDepth = root.currentMaxDepth;
+		this.moveOrdering = root.moveOrdering;
+		this.searchType = root.searchType;
+		this.ordering = createOrdering();
+	}
+
 	/**
 	 * Main method called to start executing a search.
 	 */
 	@Override
 	public Move call() throws TimeoutException {
 
-		/*
-		 * Note: Search time increases exponentially with depth. The modified
-		 * timeout can be used to stop the program from starting a new search if
-		 * more than that time has passed (faster return). Regardless, the
-		 * search will be stopped once the actual timeout is reached.
-		 */
+		// Monte Carlo has no depth, so a depth limit alone would never stop
+		// it.
+		SearchLimits limits = this.limits;
+		if (searchType == MONTE_CARLO_TREE_SEARCH
+				&& limits.getDepth() != Integer.MAX_VALUE) {
+			limits = SearchLimits.DEFAULT;
+		}
+
+		// The search stops wherever it is at the hard time limit, but does
+		// not start a new iteration after the soft one. Unlimited times
+		// overflow the deadlines, which the nanoTime differences still compare
+		// correctly.
+		iterationStartTime = System.nanoTime();
+		long searchStartTime = iterationStartTime;
+		softDeadline = searchStartTime
+				+ TimeUnit.MILLISECONDS.toNanos(limits.getSoftTimeLimit(board))
+				- TimeUnit.MILLISECONDS.toNanos(ponderTime);
+		deadline = searchStartTime
+				+ TimeUnit.MILLISECONDS.toNanos(limits.getHardTimeLimit(board));
+		nodeLimit = limits.getNodes();
+		// Killers and history carry over from one iteration to the next.
+		ordering = createOrdering();
+		rootSquares = new int[board.getGeometry().getSquares()];
 
 		/*
 		 * --------------------------------------------------------------------
-		 * Timeout Modifications (unused ones are commented out)
+		 * Search Switch (and Loops)
 		 * --------------------------------------------------------------------
+		 * All searches loop until the soft time limit has passed or they are
+		 * stopped by the hard time limit, the node limit or the caller. They
+		 * also stop as soon as an iteration resolves the game,
+		 * since searching deeper would only repeat the same work.
 		 */
-		// long modifiedTimeout = TIMEOUT * 1000; // Regular Timeout
-		double modifiedTimeout = Math.sqrt(TIMEOUT); // Square Root of Timeout
+		try {
+			switch (searchType) {
+			case MINIMAX_ALPHA_BETA:
+				if (!quiet) {
+					System.out.println("Running Minimax w/ Alpha-Beta Pruning...");
+				}
+				do {
+					depthLimited = false;
+					publishResult(minimaxAlphaBeta());
+					++currentMaxDepth; // Search one level deeper next time
+				} while (canDeepen());
+				break;
+			case NEGAMAX_ALPHA_BETA:
+				if (!quiet) {
+					System.out.println("Running Negamax w/ Alpha-Beta Pruning...");
+				}
+				do {
+					depthLimited = false;
+					publishResult(negamaxAlphaBeta(-INFINITY, INFINITY));
+					++currentMaxDepth; // Search one level deeper next time
+				} while (canDeepen());
+				break;
+			case PRINCIPAL_VARIATION:
+				if (!quiet) {
+					System.out.println("Running Principal Variation Search w/ "
+							+ "Aspiration Windows...");
+				}
+				do {
+					publishResult(aspirationSearch());
+					++currentMaxDepth; // Search one level deeper next time
+				} while (canDeepen());
+				break;
+			case MONTE_CARLO_TREE_SEARCH:
+				if (!quiet) {
+					System.out.println("Running Monte Carlo Tree Search...");
+				}
+				publishResult(monteCarloTreeSearch());
+				break;
+			default:
+				System.out.println("An invalid search method is being used.");
+				System.exit(1);
+			}
+		} catch (SearchStoppedException e) {
+			// Stopped mid-iteration, so keep the last completed iteration.
+			// Parallel helpers may not have noticed yet, so stop them too.
+			stop();
+		}
 
-		// A conversion needs to be made to either seconds or milliseconds for
-		// consistency. Here the conversion is made to milliseconds.
-		modifiedTimeout *= 1000;
+		long[] times = new long[iterationTimes.size()];
+		for (int i = 0; i < times.length; ++i) {
+			times[i] = iterationTimes.get(i);
+		}
+		metrics = new SearchMetrics(searchType, nodes, leaves, betaCutoffs,
+				firstMoveCutoffs, transpositionProbes, transpositionHits,
+				completedDepth, times, TimeUnit.NANOSECONDS.toMicros(System
+						.nanoTime() - searchStartTime));
+		if (recorded) {
+			EngineMetrics.getShared().record(metrics);
+		}
+		if (!quiet) {
+			System.out.println(metrics);
+		}
+		return getBestMove();
 
-		long startTime = System.currentTimeMillis();
+	}
 
-		/*
-		 * --------------------------------------------------------------------
-		 * Search Switch (and Loops)
-		 * --------------------------------------------------------------------
-		 * All searches loop until modifiedTimeout time has passed or they are
-		 * forced to stop by the caller because the thread exceeded the set
-		 * timeout.
-		 */
-		switch (searchType) {
-		case MINIMAX_ALPHA_BETA:
-			System.out.println("Running Minimax w/ Alpha-Beta Pruning...");
-			do {
-				bestMove = minimaxAlphaBeta();
-				++currentMaxDepth; // Search one level deeper next time
-			} while ((System.currentTimeMillis() - startTime) < modifiedTimeout);
-			break;
-		case NEGAMAX_ALPHA_BETA:
-			System.out.println("Running Negamax w/ Alpha-Beta Pruning...");
-			do {
-				bestMove = negamaxAlphaBeta();
-				++currentMaxDepth; // Search one level deeper next time
-			} while ((System.currentTimeMillis() - startTime) < modifiedTimeout);
-			break;
-		default:
-			System.out.println("An invalid search method is being used.");
-			System.exit(1);
+	/**
+	 * Sets whether the search prints which search method it is running.
+	 * 
+	 * @param quiet
+	 *            - true to print nothing
+	 */
+	public void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Sets whether the finished search is added to the process-wide
+	 * EngineMetrics. Searches that answer no move request, such as warm-up,
+	 * benchmark and ponder searches, would otherwise skew the search times
+	 * reported over JMX.
+	 * 
+	 * @param recorded
+	 *            - false to leave the metrics unchanged (true by default)
+	 */
+	public void setRecorded(boolean recorded) {
+		this.recorded = recorded;
+	}
+
+	/**
+	 * Lets the NegaMax search spread root moves over a fork/join pool.
+	 * 
+	 * @param searchPool
+	 *            - the pool to use, or null to search on one thread
+	 */
+	public void setSearchPool(ForkJoinPool searchPool) {
+		this.searchPool = searchPool;
+	}
+
+	/**
+	 * Sets the search method. Must be called before the search starts.
+	 * 
+	 * @param searchType
+	 *            - MINIMAX_ALPHA_BETA, NEGAMAX_ALPHA_BETA (default),
+	 *            PRINCIPAL_VARIATION or MONTE_CARLO_TREE_SEARCH
+	 */
+	public void setSearchType(int searchType) {
+		this.searchType = searchType;
+	}
+
+	/**
+	 * Sets how long the search may run. Must be called before the search
+	 * starts. Node limits count each thread's nodes separately, so they only
+	 * give reproducible results without a search pool. Monte Carlo Tree
+	 * Search has no depth, so under a depth limit it uses the default time.
+	 * 
+	 * @param limits
+	 *            - the limits (SearchLimits.DEFAULT by default)
+	 */
+	public void setLimits(SearchLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Tells the search that this position was already searched while
+	 * pondering, so it answers sooner. Iterations up to the pondered depth
+	 * mostly hit the transposition table, so they run whatever the time,
+	 * while the time spent pondering counts against the soft time limit for
+	 * deeper ones. The hard limit is unchanged. Must be called before the
+	 * search starts.
+	 * 
+	 * @param ponderDepth
+	 *            - the depth the position's results were stored at
+	 * @param ponderTime
+	 *            - the time spent pondering in milliseconds
+	 */
+	public void setPondered(int ponderDepth, long ponderTime) {
+		this.ponderDepth = ponderDepth;
+		this.ponderTime = ponderTime;
+	}
+
+	/**
+	 * Sets how moves are ordered. Must be called before the search starts.
+	 * 
+	 * @param moveOrdering
+	 *            - MoveOrdering.NONE, HASH_MOVE, KILLERS or HISTORY (default)
+	 */
+	public void setMoveOrdering(int moveOrdering) {
+		this.moveOrdering = moveOrdering;
+	}
+
+	/**
+	 * Creates the move ordering state for this search's thread.
+	 * 
+	 * @return - ordering tables deep enough to reach the end of the game
+	 */
+	private MoveOrdering createOrdering() {
+		int maxPly = board.getGeometry().getSquares()
+				- board.getNumberOfMoves();
+		return new MoveOrdering(moveOrdering, board.getGeometry(), maxPly);
+	}
+
+	/**
+	 * Asks the search to stop. The search thread notices within a few thousand
+	 * nodes, and the result of the last completed iteration stays available
+	 * through getBestMove.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Publishes the result of a completed iteration to other threads.
+	 * 
+	 * @param square
+	 *            - the square of the iteration's best move, or
+	 *            TranspositionTable.NO_MOVE if there is none
+	 */
+	private void publishResult(int square) {
+		bestValue = iterationValue;
+		// Moves are shared instances, so publishing one allocates nothing.
+		// Volatile write also publishes bestValue.
+		bestMove = square == TranspositionTable.NO_MOVE ? null : board
+				.getMove(square);
+
+		long now = System.nanoTime();
+		iterationTimes.add(TimeUnit.NANOSECONDS.toMicros(now
+				- iterationStartTime));
+		iterationStartTime = now;
+		if (searchType != MONTE_CARLO_TREE_SEARCH) {
+			completedDepth = currentMaxDepth;
+		}
+	}
+
+	/**
+	 * Counts a node and unwinds the search once it reaches its node limit or,
+	 * checked every STOP_CHECK_INTERVAL nodes, if it was asked to stop, its
+	 * thread was interrupted, or its deadline has passed. The first iteration
+	 * is always finished, so a search that was not over from the start
+	 * always has a move; it takes a fraction of a millisecond even on the
+	 * largest boards.
+	 */
+	private void checkStop() {
+		if ((++nodes >= nodeLimit || ((nodes & (STOP_CHECK_INTERVAL - 1)) == 0
+				&& isStopRequired())) && root.completedDepth > 0) {
+			throw SearchStoppedException.INSTANCE;
 		}
+	}
 
-		return bestMove;
+	/**
+	 * Checks whether the search was asked to stop, its thread was interrupted,
+	 * or its deadline has passed.
+	 * 
+	 * @return - true if the search must stop
+	 */
+	private boolean isStopRequired() {
+		return root.stopRequested || Thread.currentThread().isInterrupted()
+				|| System.nanoTime() - deadline >= 0;
+	}
 
+	/**
+	 * Checks whether iterative deepening should search another iteration.
+	 * 
+	 * @return - true if the result is not resolved and there is time left or
+	 *         the next iteration was already pondered
+	 */
+	private boolean canDeepen() {
+		return !isResolved()
+				&& (currentMaxDepth <= ponderDepth || isTimeLeft());
 	}
 
 	/**
-	 * Getter for the best move found so far.
+	 * Checks whether there is time to start another iteration.
 	 * 
-	 * @return - the best move found
+	 * @return - true if the soft time limit has not passed
+	 */
+	private boolean isTimeLeft() {
+		return System.nanoTime() - softDeadline < 0;
+	}
+
+	/**
+	 * Checks whether the last iteration settled the outcome, in which case a
+	 * deeper iteration cannot change the result. This is true when no line
+	 * was cut off by the depth limit (the whole tree was searched) or when
+	 * the best score is a forced win or loss within the iteration's depth.
+	 * A win or loss beyond that depth can only come from a transposition
+	 * table entry stored by an earlier, deeper search, and a faster one may
+	 * still lie just past the depth. Iterative deepening also stops once the
+	 * maximum depth has been searched.
+	 * 
+	 * @return - true if iterative deepening can stop
+	 */
+	private boolean isResolved() {
+		return !depthLimited || (Math.abs(bestValue) > WIN / 2
+				&& WIN - Math.abs(bestValue) - board.getNumberOfMoves()
+						<= completedDepth)
+				|| currentMaxDepth > limits.getDepth();
+	}
+
+	/**
+	 * Getter for the best move found so far. The search always completes its
+	 * first iteration, so until then, or if it failed or never ran, this is
+	 * the first empty square.
+	 * 
+	 * @return - the best move found, or null if the game was already over
 	 */
 	public Move getBestMove() {
-		return bestMove;
+		Move move = bestMove;
+		if (move == null && fallbackSquare != Board.NO_SQUARE) {
+			move = board.getMove(fallbackSquare);
+		}
+		return move;
+	}
+
+	/**
+	 * Getter for the depth of the last completed iteration, which can be read
+	 * while the search is still running.
+	 * 
+	 * @return - the depth (0 if no iteration completed, or for Monte Carlo)
+	 */
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	/**
+	 * Getter for the score of the best move found so far.
+	 * 
+	 * @return - the score for the searching player (from -1000 to 1000 for
+	 *         Monte Carlo, the expected result)
+	 */
+	public int getBestValue() {
+		return bestValue;
+	}
+
+	/**
+	 * Looks up a search type by its short name.
+	 * 
+	 * @param name
+	 *            - one of SEARCH_TYPE_NAMES
+	 * @return - the search type, or -1 if the name is unknown
+	 */
+	public static int getSearchType(String name) {
+		for (int i = 0; i < SEARCH_TYPE_NAMES.length; ++i) {
+			if (SEARCH_TYPE_NAMES[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Getter for the statistics of the search.
+	 * 
+	 * @return - the search's metrics, or null if it has not finished
+	 */
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Getter for the number of nodes searched. Only valid once the search has
+	 * finished.
+	 * 
+	 * @return - the number of nodes searched (playouts for Monte Carlo)
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Getter for the number of nodes whose search was cut off early.
+	 * 
+	 * @return - the number of beta cutoffs
+	 */
+	public long getBetaCutoffs() {
+		return betaCutoffs;
+	}
+
+	/**
+	 * Getter for the number of cutoffs caused by the first move searched. The
+	 * closer this is to getBetaCutoffs, the better the move ordering.
+	 * 
+	 * @return - the number of first-move cutoffs
+	 */
+	public long getFirstMoveCutoffs() {
+		return firstMoveCutoffs;
+	}
+
+	/**
+	 * Counts a cutoff and remembers the move that caused it.
+	 * 
+	 * @param ply
+	 *            - the distance of the node from the root
+	 * @param index
+	 *            - the position of the move in the node's move order
+	 * @param playerID
+	 *            - the player who made the move
+	 * @param square
+	 *            - the square of the move
+	 * @param depth
+	 *            - the remaining depth at the node
+	 */
+	private void recordCutoff(int ply, int index, int playerID, int square,
+			int depth) {
+		++betaCutoffs;
+		if (index == 0) {
+			++firstMoveCutoffs;
+		}
+		ordering.recordCutoff(ply, playerID, square, depth);
+	}
+
+	/**
+	 * Adds the statistics of a finished parallel helper to this search's.
+	 * 
+	 * @param helper
+	 *            - the helper search
+	 */
+	private void addStatistics(Search helper) {
+		nodes += helper.nodes;
+		leaves += helper.leaves;
+		betaCutoffs += helper.betaCutoffs;
+		firstMoveCutoffs += helper.firstMoveCutoffs;
+		transpositionProbes += helper.transpositionProbes;
+		transpositionHits += helper.transpositionHits;
+	}
+
+	/**
+	 * Fills rootSquares with the distinct root moves, with the best move of
+	 * the previous iteration (or, on the first iteration, the transposition
+	 * table's best move) first.
+	 * 
+	 * @return - the number of root moves
+	 */
+	private int getRootSquares() {
+		int count = board.getDistinctValidSquares(rootSquares);
+		if (moveOrdering == MoveOrdering.NONE) {
+			return count;
+		}
+
+		Move pvMove = bestMove;
+		int pvSquare = pvMove == null ? getHashSquare(board,
+				rootPlayerID) : board.toSquare(pvMove);
+		// A symmetric duplicate of the move may have been removed instead.
+		for (int i = 0; i < count; ++i) {
+			if (rootSquares[i] == pvSquare) {
+				System.arraycopy(rootSquares, 0, rootSquares, 1, i);
+				rootSquares[0] = pvSquare;
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Looks up the best move stored for a position in the transposition
+	 * table, mapped back from the canonical position.
+	 * 
+	 * @param board
+	 *            - the board at the node
+	 * @param playerID
+	 *            - the player to move
+	 * @return - the square of the move, or TranspositionTable.NO_MOVE
+	 */
+	private int getHashSquare(Board board, int playerID) {
+		int symmetry = board.getCanonicalSymmetry();
+		long entry = transpositionTable.probe(board.getSymmetricHash(
+				symmetry, playerID));
+		return getHashSquare(board, symmetry, entry);
+	}
+
+	/**
+	 * Extracts the best move of a transposition table entry, mapped back from
+	 * the canonical position.
+	 * 
+	 * @param board
+	 *            - the board at the node
+	 * @param symmetry
+	 *            - the symmetry mapping the board to its canonical form
+	 * @param entry
+	 *            - the entry probed for the board
+	 * @return - the square of the move, or TranspositionTable.NO_MOVE
+	 */
+	private int getHashSquare(Board board, int symmetry, long entry) {
+		if (entry == TranspositionTable.MISS) {
+			return TranspositionTable.NO_MOVE;
+		}
+		int square = TranspositionTable.getMove(entry);
+		if (square == TranspositionTable.NO_MOVE) {
+			return square;
+		}
+		Symmetry symmetries = board.getGeometry().getSymmetry();
+		square = symmetries.transformSquare(symmetries.inverse(symmetry),
+				square);
+		return board.getSquareValue(square) == Board.EMPTY ? square
+				: TranspositionTable.NO_MOVE;
 	}
 
 	/**
@@ -124,94 +695,120 @@ public class Search implements Callable<Move> {
 	 *            - the board being analyzed
 	 * @param playerID
 	 *            - the player which the state is being analyzed in respect to
+	 * @param result
+	 *            - the result of board.checkGameOver()
 	 * @return - the heuristic value
 	 */
-	private int calculateHeuristic(Board board, int playerID, int result) {
+	int calculateHeuristic(Board board, int playerID, int result) {
 
 		/*
 		 * --------------------------------------------------------------------
 		 * End game conditions
 		 * --------------------------------------------------------------------
 		 * Adds/Subtracts the number of moves to favor faster wins and slower
-		 * losses. Since the number of moves will be at most 9, the outcomes do
-		 * not overlap.
+		 * losses. Since the number of moves is at most the number of squares
+		 * (225 on the largest board), the outcomes do not overlap.
 		 */
+		if (result != Board.INCOMPLETE) {
+			++leaves;
+		}
 		if (result == Board.TIE) {
 			return 0;
 		} else if (result == playerID) {
-			return 100 - board.getNumberOfMoves(); // Faster win (less moves)
-		} else if (result == player.getOtherPlayerID(playerID)) {
-			return -100 + board.getNumberOfMoves(); // Slower loss (more moves)
+			return WIN - board.getNumberOfMoves(); // Faster win (less moves)
+		} else if (result == getOtherPlayerID(playerID)) {
+			return -WIN + board.getNumberOfMoves(); // Slower loss (more moves)
 		}
 
+		// The depth limit, rather than the end of the game, stopped the line.
+		depthLimited = true;
+		++leaves;
+
 		/*
 		 * --------------------------------------------------------------------
 		 * Incomplete game conditions (maximum depth of current search reached)
 		 * --------------------------------------------------------------------
 		 */
-		int heuristicValue = 0;
+		// Prefer valuable squares (on 3x3, the corners and the center).
+		int[] weights = board.getGeometry().getSquareWeights();
+		return evaluate(board.getBits(playerID), weights)
+				- evaluate(board.getBits(getOtherPlayerID(playerID)),
+						weights);
 
-		// Prefer corners
-		heuristicValue += evaluate(board.getPositionValue(0, 0), playerID, 2);
-		heuristicValue += evaluate(board.getPositionValue(0, 2), playerID, 2);
-		heuristicValue += evaluate(board.getPositionValue(2, 0), playerID, 2);
-		heuristicValue += evaluate(board.getPositionValue(2, 2), playerID, 2);
-		// Prefer center
-		heuristicValue += evaluate(board.getPositionValue(1, 1), playerID, 10);
-
-		return heuristicValue;
+	}
 
+	/**
+	 * Used in heuristic calculation to add up the value of the squares a
+	 * player controls.
+	 * 
+	 * @param bits
+	 *            - the player's bitboard
+	 * @param weights
+	 *            - the value of each square
+	 * @return - total value of the player's squares
+	 */
+	private int evaluate(long[] bits, int[] weights) {
+		int value = 0;
+		for (int word = 0; word < bits.length; ++word) {
+			for (long mask = bits[word]; mask != 0; mask &= mask - 1) {
+				value += weights[word * BoardGeometry.WORD_SIZE
+						+ Long.numberOfTrailingZeros(mask)];
+			}
+		}
+		return value;
 	}
 
 	/**
-	 * Used in heuristic calculation to check who is in control of a square and
-	 * thereby assign a value to it.
+	 * Returns the ID of the opposite player.
 	 * 
-	 * @param square
-	 *            - the value of the square being analyzed
 	 * @param playerID
-	 *            - the player
-	 * @param value
-	 *            - the value to assign
-	 * @return - heuristic value depending on owner of the square
-	 */
-	private int evaluate(int square, int playerID, int value) {
-		if (square == playerID) {
-			return value;
-		} else if (square == player.getOtherPlayerID(playerID)) {
-			return -value;
-		} else { // Empty square case
-			return 0;
-		}
+	 *            - the player's ID
+	 * @return - the opposing player's ID
+	 */
+	private static int getOtherPlayerID(int playerID) {
+		return playerID == Board.X ? Board.O : Board.X;
 	}
 
 	/**
 	 * Method called to run MiniMax search with Alpha-Beta Pruning.
 	 * 
-	 * @return - the optimal move given the depth restriction
+	 * @return - the square of the optimal move given the depth restriction,
+	 *         or TranspositionTable.NO_MOVE if the game is over
 	 */
-	private Move minimaxAlphaBeta() {
+	private int minimaxAlphaBeta() {
+
+		// A finished game has no move to search, only its final score.
+		int result = board.checkGameOver();
+		if (result != Board.INCOMPLETE) {
+			iterationValue = calculateHeuristic(board, rootPlayerID, result);
+			return TranspositionTable.NO_MOVE;
+		}
 
 		int newValue;
 		int maxValue = Integer.MIN_VALUE;
-		for (Move move : originalBoard.getValidMoves()) {
-			newValue = minimaxAlphaBeta(
-					originalBoard.testMove(move, player.getPlayerID()),
-					currentMaxDepth - 1, Integer.MIN_VALUE, Integer.MAX_VALUE,
-					false);
+		int bestSquare = TranspositionTable.NO_MOVE;
+		int count = getRootSquares();
+		for (int i = 0; i < count; ++i) {
+			int square = rootSquares[i];
+			board.makeMove(square, rootPlayerID);
+			newValue = minimaxAlphaBeta(board, currentMaxDepth - 1,
+					Integer.MIN_VALUE, Integer.MAX_VALUE, false);
+			board.unmakeMove(square);
 			if (newValue > maxValue) {
 				maxValue = newValue;
-				bestMove = move;
+				bestSquare = square;
 			}
 		}
-		return bestMove;
+		iterationValue = maxValue;
+		return bestSquare;
 
 	}
 
 	/**
 	 * Helper method for MiniMax with Alpha-Beta pruning that recursively calls
 	 * itself and returns the heuristic value of a certain move. The move is
-	 * implicitly passed in as a board which had the move already occur.
+	 * implicitly passed in as a board which had the move already occur. Child
+	 * moves are made and unmade on that same board.
 	 * 
 	 * @param board
 	 *            - the board with the move being analyzed
@@ -226,22 +823,31 @@ public class Search implements Callable<Move> {
 	private int minimaxAlphaBeta(Board board, int depth, int alpha, int beta,
 			boolean maximizingPlayer) {
 
+		checkStop();
+
+		// Leaves are always scored for the maximizing (searching) player.
 		int result = board.checkGameOver();
 		if (result != Board.INCOMPLETE || depth == 0) {
-			int playerID = maximizingPlayer ? player.getPlayerID() : player
-					.getOtherPlayerID();
-			return calculateHeuristic(board, playerID, result);
+			return calculateHeuristic(board, rootPlayerID, result);
 		}
 
+		// No transposition table here, so only killers and history apply.
+		int ply = currentMaxDepth - depth;
+		int playerID = maximizingPlayer ? rootPlayerID
+				: getOtherPlayerID(rootPlayerID);
+		int count = ordering.orderMoves(board, ply, playerID,
+				TranspositionTable.NO_MOVE);
+		int[] squares = ordering.getMoves(ply);
+
 		if (maximizingPlayer) {
 			int newAlpha = Integer.MIN_VALUE;
-			for (Move move : board.getValidMoves()) {
-				newAlpha = Math.max(
-						newAlpha,
-						minimaxAlphaBeta(
-								board.testMove(move, player.getPlayerID()),
-								depth - 1, newAlpha, beta, false));
+			for (int i = 0; i < count; ++i) {
+				board.makeMove(squares[i], playerID);
+				newAlpha = Math.max(newAlpha, minimaxAlphaBeta(board,
+						depth - 1, newAlpha, beta, false));
+				board.unmakeMove(squares[i]);
 				if (beta <= newAlpha) {
+					recordCutoff(ply, i, playerID, squares[i], depth);
 					break; // Beta cutoff
 				}
 			}
@@ -249,14 +855,13 @@ public class Search implements Callable<Move> {
 
 		} else {
 			int newBeta = Integer.MAX_VALUE;
-			for (Move move : board.getValidMoves()) {
-				newBeta = Math
-						.min(newBeta,
-								minimaxAlphaBeta(
-										board.testMove(move,
-												player.getOtherPlayerID()),
-										depth - 1, alpha, newBeta, true));
+			for (int i = 0; i < count; ++i) {
+				board.makeMove(squares[i], playerID);
+				newBeta = Math.min(newBeta, minimaxAlphaBeta(board,
+						depth - 1, alpha, newBeta, true));
+				board.unmakeMove(squares[i]);
 				if (newBeta <= alpha) {
+					recordCutoff(ply, i, playerID, squares[i], depth);
 					break; // Alpha cutoff
 				}
 			}
@@ -267,33 +872,125 @@ public class Search implements Callable<Move> {
 	}
 
 	/**
-	 * Method called to run NegaMax with Alpha-Beta pruning.
+	 * Runs one Principal Variation Search iteration, starting with a narrow
+	 * window around the previous iteration's score. If the score falls outside
+	 * the window, it is only a bound, so the failing side of the window is
+	 * opened and the iteration is searched again.
 	 * 
-	 * @return - the optimal move given the depth restriction
+	 * @return - the square of the optimal move given the depth restriction
 	 */
-	private Move negamaxAlphaBeta() {
+	private int aspirationSearch() {
 
-		int newValue;
-		int bestValue = Integer.MIN_VALUE;
-		Move bestMove = null;
-		for (Move move : originalBoard.getValidMoves()) {
-			newValue = -negamaxAlphaBeta(
-					originalBoard.testMove(move, player.getPlayerID()),
-					currentMaxDepth - 1, Integer.MIN_VALUE, Integer.MAX_VALUE,
-					player.getOtherPlayerID());
-			if (newValue > bestValue) {
-				bestValue = newValue;
-				bestMove = move;
+		int alpha = -INFINITY;
+		int beta = INFINITY;
+		// Proven wins and losses jump between iterations, so skip the window.
+		if (bestMove != null && Math.abs(bestValue) < WIN / 2) {
+			alpha = bestValue - ASPIRATION_WINDOW;
+			beta = bestValue + ASPIRATION_WINDOW;
+		}
+
+		while (true) {
+			depthLimited = false;
+			int square = negamaxAlphaBeta(alpha, beta);
+			if (iterationValue <= alpha) {
+				alpha = -INFINITY; // Failed low
+			} else if (iterationValue >= beta) {
+				beta = INFINITY; // Failed high
+			} else {
+				return square;
+			}
+		}
+
+	}
+
+	/**
+	 * Method called to run NegaMax with Alpha-Beta pruning. The score of the
+	 * iteration is only exact if it falls strictly inside the window.
+	 * 
+	 * @param alpha
+	 * @param beta
+	 * @return - the square of the optimal move given the depth restriction,
+	 *         or TranspositionTable.NO_MOVE if the game is over
+	 */
+	private int negamaxAlphaBeta(int alpha, int beta) {
+
+		// A finished game has no move to search, only its final score.
+		int result = board.checkGameOver();
+		if (result != Board.INCOMPLETE) {
+			iterationValue = calculateHeuristic(board, rootPlayerID, result);
+			return TranspositionTable.NO_MOVE;
+		}
+
+		int count = getRootSquares();
+
+		// The first move is always searched alone, with the whole window.
+		int bestSquare = rootSquares[0];
+		board.makeMove(bestSquare, rootPlayerID);
+		int bestValue = searchMove(board, currentMaxDepth, alpha, beta,
+				rootPlayerID, true);
+		board.unmakeMove(bestSquare);
+		alpha = Math.max(alpha, bestValue);
+
+		if (alpha >= beta || count == 1) {
+			// Nothing left to search.
+		} else if (searchPool == null) {
+			int newValue;
+			for (int i = 1; i < count; ++i) {
+				int square = rootSquares[i];
+				board.makeMove(square, rootPlayerID);
+				newValue = searchMove(board, currentMaxDepth, alpha, beta,
+						rootPlayerID, false);
+				board.unmakeMove(square);
+				if (newValue > alpha) {
+					alpha = newValue;
+					bestValue = newValue;
+					bestSquare = square;
+					if (alpha >= beta) {
+						break;
+					}
+				}
+			}
+		} else {
+			// Search the remaining moves in parallel.
+			AtomicInteger sharedAlpha = new AtomicInteger(alpha);
+			RootMoveTask[] tasks = new RootMoveTask[count - 1];
+			for (int i = 1; i < count; ++i) {
+				tasks[i - 1] = new RootMoveTask(rootSquares[i], sharedAlpha,
+						beta);
+				searchPool.execute(tasks[i - 1]);
+			}
+
+			// Collect results in move order, so ties resolve the same way as
+			// in the single-threaded search.
+			for (RootMoveTask task : tasks) {
+				task.join();
+				int newValue = task.value;
+				depthLimited |= task.helper.depthLimited;
+				addStatistics(task.helper);
+				// Only scores above the window's alpha are exact.
+				if (newValue > task.startAlpha && newValue > alpha) {
+					alpha = newValue;
+					bestValue = newValue;
+					bestSquare = task.square;
+				}
 			}
 		}
-		return bestMove;
+
+		iterationValue = bestValue;
+		return bestSquare;
 
 	}
 
 	/**
 	 * Helper method for NegaMax with Alpha-Beta pruning that recursively calls
 	 * itself and returns the heuristic value of a certain move. The move is
-	 * implicitly passed in as a board which had the move already occur.
+	 * implicitly passed in as a board which had the move already occur. Child
+	 * moves are made and unmade on that same board.
+	 * 
+	 * Positions are looked up in the transposition table before searching, and
+	 * the result is stored afterwards along with whether it is an exact score
+	 * or only a bound (because of a cutoff). Symmetric positions share one
+	 * entry.
 	 * 
 	 * @param board
 	 *            - the board with the move being analyzed
@@ -308,26 +1005,293 @@ public class Search implements Callable<Move> {
 	private int negamaxAlphaBeta(Board board, int depth, int alpha, int beta,
 			int playerID) {
 
+		checkStop();
+
 		// Static Evaluation
 		int result = board.checkGameOver();
 		if (result != Board.INCOMPLETE || depth == 0) {
 			return calculateHeuristic(board, playerID, result);
 		}
 
-		int bestValue = Integer.MIN_VALUE;
+		// Transposition table lookup, keyed by the canonical form of the
+		// position so that rotations and reflections share an entry.
+		int symmetry = board.getCanonicalSymmetry();
+		long key = board.getSymmetricHash(symmetry, playerID);
+		long entry = transpositionTable.probe(key);
+		++transpositionProbes;
+		if (entry != TranspositionTable.MISS) {
+			++transpositionHits;
+		}
+		int entryDepth = TranspositionTable.getDepth(entry);
+		if (entry != TranspositionTable.MISS && entryDepth >= depth) {
+			int score = TranspositionTable.getScore(entry);
+			int entryBound = TranspositionTable.getBound(entry);
+			if (entryBound == TranspositionTable.EXACT
+					|| (entryBound == TranspositionTable.LOWER_BOUND
+							&& score >= beta)
+					|| (entryBound == TranspositionTable.UPPER_BOUND
+							&& score <= alpha)) {
+				// Reusing a depth-limited result limits this line as well.
+				if (entryDepth != TranspositionTable.RESOLVED) {
+					depthLimited = true;
+				}
+				return score;
+			}
+		}
+		// Even when too shallow to use, the entry's move is the best guess.
+		int hashSquare = TranspositionTable.NO_MOVE;
+		if (moveOrdering != MoveOrdering.NONE) {
+			hashSquare = getHashSquare(board, symmetry, entry);
+		}
+
+		// Track whether this subtree alone hits the depth limit.
+		boolean parentDepthLimited = depthLimited;
+		depthLimited = false;
+
+		int bestValue = -INFINITY;
+		int bestSquare = TranspositionTable.NO_MOVE;
 		int newAlpha = alpha;
 		int newValue;
-		for (Move move : board.getValidMoves()) {
-			newValue = -negamaxAlphaBeta(board.testMove(move, playerID),
-					depth - 1, -beta, -alpha, player.getOtherPlayerID(playerID));
-			bestValue = Math.max(bestValue, newValue);
+		int ply = currentMaxDepth - depth;
+		int count = ordering.orderMoves(board, ply, playerID, hashSquare);
+		int[] squares = ordering.getMoves(ply);
+		for (int i = 0; i < count; ++i) {
+			board.makeMove(squares[i], playerID);
+			newValue = searchMove(board, depth, newAlpha, beta, playerID,
+					i == 0);
+			board.unmakeMove(squares[i]);
+			if (newValue > bestValue) {
+				bestValue = newValue;
+				bestSquare = squares[i];
+			}
 			newAlpha = Math.max(newAlpha, newValue);
 			if (newAlpha >= beta) {
+				recordCutoff(ply, i, playerID, squares[i], depth);
 				break;
 			}
 		}
+
+		// Store the result along with the type of bound it represents.
+		int bound;
+		if (bestValue <= alpha) {
+			bound = TranspositionTable.UPPER_BOUND;
+		} else if (bestValue >= beta) {
+			bound = TranspositionTable.LOWER_BOUND;
+		} else {
+			bound = TranspositionTable.EXACT;
+		}
+		// Moves are stored relative to the canonical position.
+		if (bestSquare != TranspositionTable.NO_MOVE) {
+			bestSquare = board.getGeometry().getSymmetry()
+					.transformSquare(symmetry, bestSquare);
+		}
+		// Fully searched subtrees are valid at any depth.
+		int storedDepth = depthLimited ? depth : TranspositionTable.RESOLVED;
+		transpositionTable.store(key, storedDepth, bound, bestValue,
+				bestSquare);
+		depthLimited |= parentDepthLimited;
+
 		return bestValue;
 
 	}
 
+	/**
+	 * Scores a move for the player who made it by searching the position after
+	 * it. Under Principal Variation Search, moves after the first are expected
+	 * to be worse, so they are first searched with a null window (which only
+	 * proves the score is at most alpha) and only searched again with the full
+	 * window if they turn out to be better.
+	 * 
+	 * @param board
+	 *            - the board with the move already made
+	 * @param depth
+	 *            - depth of the search at the node the move was made from
+	 * @param alpha
+	 * @param beta
+	 * @param playerID
+	 *            - the person who made the move
+	 * @param firstMove
+	 *            - whether the move is the first searched at its node
+	 * @return - heuristic value of the move (a bound if outside the window)
+	 */
+	private int searchMove(Board board, int depth, int alpha, int beta,
+			int playerID, boolean firstMove) {
+
+		int otherPlayerID = getOtherPlayerID(playerID);
+		if (firstMove || searchType != PRINCIPAL_VARIATION) {
+			return -negamaxAlphaBeta(board, depth - 1, -beta, -alpha,
+					otherPlayerID);
+		}
+
+		int value = -negamaxAlphaBeta(board, depth - 1, -alpha - 1, -alpha,
+				otherPlayerID);
+		if (value > alpha && value < beta) {
+			// Better than expected, so find its exact score.
+			value = -negamaxAlphaBeta(board, depth - 1, -beta, -alpha,
+					otherPlayerID);
+		}
+		return value;
+
+	}
+
+	/**
+	 * Method called to run Monte Carlo Tree Search until the soft deadline or
+	 * the node limit, on every thread of the search pool if there is one. The
+	 * trees share the node limit evenly.
+	 * 
+	 * @return - the square of the most visited root move, or
+	 *         TranspositionTable.NO_MOVE if no playout finished
+	 */
+	private int monteCarloTreeSearch() {
+
+		int squares = board.getGeometry().getSquares();
+		long[] visits = new long[squares];
+		double[] scores = new double[squares];
+
+		if (searchPool == null) {
+			MonteCarloTreeSearch tree = new MonteCarloTreeSearch(board,
+					rootPlayerID, 1);
+			runPlayouts(tree, nodeLimit);
+			tree.addRootStatistics(visits, scores);
+			nodes += tree.getIterations();
+		} else {
+			int trees = searchPool.getParallelism();
+			long playoutLimit = Math.max(nodeLimit / trees, 1);
+			List<PlayoutTask> tasks = new ArrayList<PlayoutTask>();
+			for (int i = 1; i <= trees; ++i) {
+				PlayoutTask task = new PlayoutTask(i, playoutLimit);
+				tasks.add(task);
+				searchPool.execute(task);
+			}
+			for (PlayoutTask task : tasks) {
+				task.join();
+				task.tree.addRootStatistics(visits, scores);
+				nodes += task.tree.getIterations();
+			}
+		}
+
+		// The most visited move is the most reliable, even if another move
+		// has a slightly better average from fewer playouts.
+		int bestSquare = TranspositionTable.NO_MOVE;
+		for (int square = 0; square < squares; ++square) {
+			if (visits[square] > 0 && (bestSquare == TranspositionTable.NO_MOVE
+					|| visits[square] > visits[bestSquare])) {
+				bestSquare = square;
+			}
+		}
+		if (bestSquare == TranspositionTable.NO_MOVE) {
+			return bestSquare;
+		}
+		// Expected result, from -1000 (always lost) to 1000 (always won).
+		iterationValue = (int) Math.round(2000 * scores[bestSquare]
+				/ visits[bestSquare]) - 1000;
+		return bestSquare;
+
+	}
+
+	/**
+	 * Grows a Monte Carlo tree until the soft deadline passes, it reaches its
+	 * playout limit or the search must stop.
+	 * 
+	 * @param tree
+	 *            - the tree to grow
+	 * @param playoutLimit
+	 *            - the most playouts to run on the tree
+	 */
+	private void runPlayouts(MonteCarloTreeSearch tree, long playoutLimit) {
+		do {
+			for (int i = 0; i < PLAYOUT_CHECK_INTERVAL
+					&& tree.getIterations() < playoutLimit; ++i) {
+				tree.iterate();
+			}
+		} while (tree.getIterations() < playoutLimit && !isStopRequired()
+				&& isTimeLeft());
+	}
+
+	/**
+	 * Thrown from deep inside a search to unwind it once a stop is detected.
+	 * A single instance without a stack trace is reused, since it is only
+	 * used for control flow.
+	 */
+	private static final class SearchStoppedException extends
+			RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+		private static final SearchStoppedException INSTANCE =
+				new SearchStoppedException();
+
+		private SearchStoppedException() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * Searches one root move on a helper search, as part of a parallel root
+	 * search. The result is an exact score only if it is greater than the
+	 * alpha the task started with and less than beta; otherwise it is a bound.
+	 * It is kept in a plain field, which join makes visible, rather than
+	 * returned boxed.
+	 */
+	private final class RootMoveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int square;
+		private final AtomicInteger sharedAlpha;
+		private final int beta;
+		private final Search helper;
+		private int startAlpha;
+		private int value;
+
+		private RootMoveTask(int square, AtomicInteger sharedAlpha, int beta) {
+			this.square = square;
+			this.sharedAlpha = sharedAlpha;
+			this.beta = beta;
+			// Copy the board now, while the root board is unchanged.
+			this.helper = new Search(Search.this);
+		}
+
+		@Override
+		protected void compute() {
+
+			// Start from the best score found by the other moves so far.
+			startAlpha = sharedAlpha.get();
+			helper.board.makeMove(square, rootPlayerID);
+			value = helper.searchMove(helper.board, currentMaxDepth,
+					startAlpha, beta, rootPlayerID, false);
+
+			// Raise the shared alpha for the moves still being searched.
+			int currentAlpha = sharedAlpha.get();
+			while (value > currentAlpha
+					&& !sharedAlpha.compareAndSet(currentAlpha, value)) {
+				currentAlpha = sharedAlpha.get();
+			}
+
+		}
+	}
+
+
+	/**
+	 * Grows one of the trees of a root-parallel Monte Carlo Tree Search.
+	 */
+	private final class PlayoutTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final MonteCarloTreeSearch tree;
+		private final long playoutLimit;
+
+		private PlayoutTask(int seed, long playoutLimit) {
+			// Each tree needs its own playouts, so each gets its own seed.
+			this.tree = new MonteCarloTreeSearch(board, rootPlayerID,
+					seed);
+			this.playoutLimit = playoutLimit;
+		}
+
+		@Override
+		protected void compute() {
+			runPlayouts(tree, playoutLimit);
+		}
+	}
+
 }
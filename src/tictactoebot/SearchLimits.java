@@ -0,0 +1,234 @@
+package tictactoebot;
+
+/**
+ * How long a search may run: a fixed time per move, a game clock with an
+ * increment, a fixed depth or a node budget. Limits are immutable, so one
+ * instance can be shared by every player and every move.
+ * 
+ * Time limits come in two parts. The soft limit is the time after which no
+ * new iteration of iterative deepening is started, since it would most likely
+ * not finish; the hard limit stops the search wherever it is. Depth and node
+ * limits stop the search after the same amount of work every time, so their
+ * results can be reproduced.
+ * 
+ * @author rongil
+ *
+ */
+public final class SearchLimits {
+
+	// Returned by the time limits when the search has no time limit.
+	public static final long UNLIMITED = Long.MAX_VALUE;
+	// Time per move used when nothing else is set, in milliseconds.
+	public static final long DEFAULT_MOVE_TIME = 5000;
+	public static final SearchLimits DEFAULT = moveTime(DEFAULT_MOVE_TIME);
+
+	// Time kept back from the clock for handing the move over, in
+	// milliseconds.
+	private static final long MOVE_OVERHEAD = 20;
+	// Most moves a clock is spread over, however many squares are empty.
+	private static final int MAX_MOVES_TO_GO = 30;
+
+	// Kinds of limit
+	private static final int MOVE_TIME = 0;
+	private static final int CLOCK = 1;
+	private static final int DEPTH = 2;
+	private static final int NODES = 3;
+	private static final int NONE = 4;
+
+	// No limit at all: the search runs until it is stopped or the game is
+	// resolved (used for pondering).
+	public static final SearchLimits INFINITE = new SearchLimits(NONE,
+			UNLIMITED, 0, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+	private final int kind;
+	private final long time; // Milliseconds per move, or left on the clock
+	private final long increment; // Milliseconds added after each move
+	private final int depth;
+	private final long nodes;
+
+	private SearchLimits(int kind, long time, long increment, int depth,
+			long nodes) {
+		this.kind = kind;
+		this.time = time;
+		this.increment = increment;
+		this.depth = depth;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Creates limits giving every move the same time. The first iteration
+	 * always completes, even if it takes longer.
+	 * 
+	 * @param moveTime
+	 *            - the time per move in milliseconds
+	 * @return - the limits
+	 */
+	public static SearchLimits moveTime(long moveTime) {
+		return new SearchLimits(MOVE_TIME, moveTime, 0, Integer.MAX_VALUE,
+				Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates limits for a game clock: the player has some time left for the
+	 * rest of the game and gains an increment after each move.
+	 * 
+	 * @param time
+	 *            - the time left on the clock in milliseconds
+	 * @param increment
+	 *            - the time added after each move in milliseconds
+	 * @return - the limits
+	 */
+	public static SearchLimits clock(long time, long increment) {
+		return new SearchLimits(CLOCK, time, increment, Integer.MAX_VALUE,
+				Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates limits that stop iterative deepening after a fixed depth, with
+	 * no time limit.
+	 * 
+	 * @param depth
+	 *            - the deepest iteration to search
+	 * @return - the limits
+	 */
+	public static SearchLimits depth(int depth) {
+		return new SearchLimits(DEPTH, UNLIMITED, 0, depth, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates limits that stop the search after a number of nodes (playouts
+	 * for Monte Carlo), with no time limit. Only the result of the last
+	 * completed iteration is kept, and the first iteration always completes,
+	 * so a very small limit can be exceeded.
+	 * 
+	 * @param nodes
+	 *            - the most nodes to search
+	 * @return - the limits
+	 */
+	public static SearchLimits nodes(long nodes) {
+		return new SearchLimits(NODES, UNLIMITED, 0, Integer.MAX_VALUE, nodes);
+	}
+
+	/**
+	 * @return - true if the limits are a game clock
+	 */
+	public boolean isClock() {
+		return kind == CLOCK;
+	}
+
+	/**
+	 * Runs the clock for one move: takes off the time the move took and adds
+	 * the increment. Other limits are returned unchanged.
+	 * 
+	 * @param elapsed
+	 *            - the time the move took in milliseconds
+	 * @return - the limits for the next move
+	 */
+	public SearchLimits afterMove(long elapsed) {
+		if (kind != CLOCK) {
+			return this;
+		}
+		return clock(time - elapsed + increment, increment);
+	}
+
+	/**
+	 * @return - the time left on the clock in milliseconds (the time per move
+	 *         for a fixed move time)
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public long getIncrement() {
+		return increment;
+	}
+
+	/**
+	 * @return - the deepest iteration to search
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return - the most nodes to search
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets the time after which no new iteration is started. An iteration
+	 * takes at least as long as all the ones before it, so one started after
+	 * half the time would rarely finish.
+	 * 
+	 * @param board
+	 *            - the position being searched
+	 * @return - the soft limit in milliseconds, or UNLIMITED
+	 */
+	public long getSoftTimeLimit(Board board) {
+		long target = getTargetTime(board);
+		return target == UNLIMITED ? UNLIMITED : target / 2;
+	}
+
+	/**
+	 * Gets the time after which the search is stopped.
+	 * 
+	 * @param board
+	 *            - the position being searched
+	 * @return - the hard limit in milliseconds, or UNLIMITED
+	 */
+	public long getHardTimeLimit(Board board) {
+		if (kind != CLOCK) {
+			return getTargetTime(board);
+		}
+		// A move may overrun its share, but never the clock itself.
+		return Math.min(getTargetTime(board) * 2, getAvailableTime());
+	}
+
+	/**
+	 * Gets the time a move should take on average. A clock is shared evenly
+	 * between the moves the player may still have to make, plus most of the
+	 * increment, since the increment comes back after the move.
+	 * 
+	 * @param board
+	 *            - the position being searched
+	 * @return - the time in milliseconds, or UNLIMITED
+	 */
+	private long getTargetTime(Board board) {
+		if (kind != CLOCK) {
+			return time;
+		}
+		int emptySquares = board.getGeometry().getSquares()
+				- board.getNumberOfMoves();
+		int movesToGo = Math.max(1, Math.min((emptySquares + 1) / 2,
+				MAX_MOVES_TO_GO));
+		long available = getAvailableTime();
+		return Math.min(available / movesToGo + increment * 3 / 4, available);
+	}
+
+	/**
+	 * @return - the time left on the clock less the move overhead, in
+	 *         milliseconds
+	 */
+	private long getAvailableTime() {
+		return Math.max(time - MOVE_OVERHEAD, 0);
+	}
+
+	@Override
+	public String toString() {
+		switch (kind) {
+		case MOVE_TIME:
+			return time + " ms per move";
+		case CLOCK:
+			return time + "+" + increment + " ms clock";
+		case DEPTH:
+			return "depth " + depth;
+		case NODES:
+			return nodes + " nodes";
+		default:
+			return "no limit";
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package tictactoebot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What happened during one search: how much work it did, how well its pruning
+ * and transposition table worked, and where its time went. Searches count
+ * these in plain fields of their own thread and only build a metrics object
+ * once they finish, so collecting them costs almost nothing.
+ * 
+ * @author rongil
+ *
+ */
+public final class SearchMetrics {
+
+	private final int searchType;
+	private final long nodes;
+	private final long leaves;
+	private final long betaCutoffs;
+	private final long firstMoveCutoffs;
+	private final long transpositionProbes;
+	private final long transpositionHits;
+	private final int depth;
+	private final long[] iterationTimes;
+	private final long elapsedTime;
+
+	/**
+	 * Creates the metrics of a finished search.
+	 * 
+	 * @param searchType
+	 *            - one of the search types defined by Search
+	 * @param nodes
+	 *            - the nodes searched (playouts for Monte Carlo)
+	 * @param leaves
+	 *            - the positions evaluated
+	 * @param betaCutoffs
+	 *            - the nodes whose search was cut off early
+	 * @param firstMoveCutoffs
+	 *            - the cutoffs caused by the first move searched
+	 * @param transpositionProbes
+	 *            - the transposition table lookups
+	 * @param transpositionHits
+	 *            - the lookups that found an entry
+	 * @param depth
+	 *            - the depth of the last completed iteration
+	 * @param iterationTimes
+	 *            - the time of each completed iteration, in microseconds
+	 * @param elapsedTime
+	 *            - the time of the whole search, in microseconds
+	 */
+	public SearchMetrics(int searchType, long nodes, long leaves,
+			long betaCutoffs, long firstMoveCutoffs, long transpositionProbes,
+			long transpositionHits, int depth, long[] iterationTimes,
+			long elapsedTime) {
+		this.searchType = searchType;
+		this.nodes = nodes;
+		this.leaves = leaves;
+		this.betaCutoffs = betaCutoffs;
+		this.firstMoveCutoffs = firstMoveCutoffs;
+		this.transpositionProbes = transpositionProbes;
+		this.transpositionHits = transpositionHits;
+		this.depth = depth;
+		this.iterationTimes = iterationTimes;
+		this.elapsedTime = elapsedTime;
+	}
+
+	public int getSearchType() {
+		return searchType;
+	}
+
+	/**
+	 * @return - the nodes searched (playouts for Monte Carlo)
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return - the positions evaluated, either by the heuristic or because
+	 *         the game was over
+	 */
+	public long getLeaves() {
+		return leaves;
+	}
+
+	public long getBetaCutoffs() {
+		return betaCutoffs;
+	}
+
+	public long getFirstMoveCutoffs() {
+		return firstMoveCutoffs;
+	}
+
+	/**
+	 * @return - the fraction of cutoffs caused by the first move searched
+	 *         (closer to 1 means better move ordering), or 0 if none
+	 */
+	public double getFirstMoveCutoffRate() {
+		return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+	}
+
+	public long getTranspositionProbes() {
+		return transpositionProbes;
+	}
+
+	public long getTranspositionHits() {
+		return transpositionHits;
+	}
+
+	/**
+	 * @return - the fraction of transposition table lookups that found an
+	 *         entry, or 0 if there were none
+	 */
+	public double getTranspositionHitRate() {
+		return transpositionProbes == 0 ? 0 : (double) transpositionHits
+				/ transpositionProbes;
+	}
+
+	/**
+	 * @return - the depth of the last completed iteration (0 for Monte Carlo)
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return - the time of each completed iteration, in microseconds
+	 */
+	public long[] getIterationTimes() {
+		return iterationTimes.clone();
+	}
+
+	/**
+	 * @return - the time of the whole search, in microseconds
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * @return - the nodes searched per second
+	 */
+	public long getNodesPerSecond() {
+		return elapsedTime == 0 ? 0 : nodes * TimeUnit.SECONDS.toMicros(1)
+				/ elapsedTime;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(Search.SEARCH_TYPE_NAMES[searchType]).append(": ");
+		if (searchType == Search.MONTE_CARLO_TREE_SEARCH) {
+			builder.append(nodes).append(" playouts");
+		} else {
+			builder.append("depth ").append(depth).append(", ").append(nodes)
+					.append(" nodes, ").append(leaves).append(" leaves, ")
+					.append(String.format("%.1f",
+							100 * getFirstMoveCutoffRate()))
+					.append("% first-move cutoffs");
+			if (transpositionProbes > 0) {
+				builder.append(", ").append(String.format("%.1f",
+						100 * getTranspositionHitRate())).append("% TT hits");
+			}
+		}
+		builder.append(", ").append(elapsedTime / 1000).append(" ms (")
+				.append(getNodesPerSecond()).append("/s)");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,435 @@
+package tictactoebot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the engine protocol (see Protocol) to many programs at once over
+ * TCP on the loopback address. Every connection is its own protocol session,
+ * with its own board, options and transposition table. Games played through
+ * the protocol are hosted by one SessionManager for all connections, so a
+ * client can resume a game by ID after reconnecting, and games abandoned by
+ * their clients are removed once idle.
+ * 
+ * A single thread multiplexes all connections with a selector, reading
+ * commands and writing answers without ever blocking. Commands are carried
+ * out on a pool of workers no larger than the engine, so at most one search
+ * per engine thread runs at a time; connections queue for a worker in the
+ * order their commands arrive, each with at most one command in progress.
+ * 
+ * Clients cannot outrun the server: a connection with too many commands
+ * queued, or too many answers it has not read yet, is not read from until it
+ * catches up, and connections beyond the limit are turned away. Every search
+ * is capped at a maximum time, so go infinite is answered after that time
+ * instead of waiting for stop.
+ * 
+ * @author rongil
+ *
+ */
+public class Server implements Closeable {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Longest any search may run by default, in milliseconds.
+	public static final long DEFAULT_MAX_SEARCH_TIME = 10000;
+
+	// Connections served at the same time.
+	private static final int MAX_CONNECTIONS = 256;
+	// Longest command accepted, in bytes.
+	private static final int MAX_LINE_LENGTH = 4096;
+	// Commands queued per connection before it stops being read.
+	private static final int MAX_PENDING_LINES = 64;
+	// Unread answers per connection before it stops being read, in bytes.
+	private static final int MAX_PENDING_OUTPUT = 64 * 1024;
+	// Size of each connection's read buffer.
+	private static final int BUFFER_SIZE = 4096;
+
+	private final Engine engine;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final ExecutorService workers;
+	// Games played through any connection.
+	private final SessionManager sessionManager = new SessionManager();
+	// Connections whose interest in reading or writing may have changed,
+	// updated by the selector thread.
+	private final Queue<Connection> changed =
+			new ConcurrentLinkedQueue<Connection>();
+	private volatile long maxSearchTime = DEFAULT_MAX_SEARCH_TIME;
+	private volatile boolean running = true;
+	private int connections;
+
+	/**
+	 * Creates a server listening on a port of the loopback address. Commands
+	 * are not read until run is called.
+	 * 
+	 * @param engine
+	 *            - the engine running the searches (must be started)
+	 * @param port
+	 *            - the port to listen on (0 for any free port)
+	 * @throws IOException
+	 *             - if the port cannot be opened
+	 */
+	public Server(Engine engine, int port) throws IOException {
+		this.engine = engine;
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.bind(new InetSocketAddress(
+					InetAddress.getLoopbackAddress(), port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			serverChannel.close();
+			selector.close();
+			throw e;
+		}
+
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		workers = Executors.newFixedThreadPool(engine.getThreads(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "server-"
+								+ threadNumber.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Caps the time of every search. Applies to connections accepted
+	 * afterwards.
+	 * 
+	 * @param maxSearchTime
+	 *            - the longest time in milliseconds
+	 */
+	public void setMaxSearchTime(long maxSearchTime) {
+		this.maxSearchTime = maxSearchTime;
+	}
+
+	/**
+	 * @return - the port the server listens on
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Serves connections until the server is closed. Blocks the calling
+	 * thread, which becomes the selector thread.
+	 * 
+	 * @throws IOException
+	 *             - if the selector fails
+	 */
+	public void run() throws IOException {
+
+		try {
+			while (running) {
+				selector.select();
+
+				// Apply what the workers did since the last select.
+				Connection connection;
+				while ((connection = changed.poll()) != null) {
+					connection.update();
+				}
+
+				for (SelectionKey key : selector.selectedKeys()) {
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					connection = (Connection) key.attachment();
+					try {
+						if (key.isReadable()) {
+							connection.read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.write();
+						}
+						connection.update();
+					} catch (IOException e) {
+						// The client went away.
+						connection.close();
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() != null) {
+					((Connection) key.attachment()).close();
+				}
+			}
+			serverChannel.close();
+			selector.close();
+			workers.shutdownNow();
+			sessionManager.close();
+		}
+
+	}
+
+	/**
+	 * Stops serving, closing every connection. Searches still running finish
+	 * on their own, within the maximum search time.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Accepts a waiting connection, or turns it away if there are too many.
+	 */
+	private void accept() throws IOException {
+
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		if (connections >= MAX_CONNECTIONS) {
+			// Best effort: the answer fits in any socket buffer.
+			channel.configureBlocking(false);
+			channel.write(encode("info string Too many connections\n"));
+			channel.close();
+			return;
+		}
+
+		channel.configureBlocking(false);
+		Protocol protocol = new Protocol(engine);
+		protocol.setMaxSearchTime(maxSearchTime);
+		protocol.setSessionManager(sessionManager);
+		Connection connection = new Connection(channel, protocol);
+		connection.key = channel.register(selector, SelectionKey.OP_READ,
+				connection);
+		++connections;
+
+	}
+
+	/**
+	 * Encodes protocol text, which is always ASCII.
+	 */
+	private static ByteBuffer encode(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * One client's protocol session. The selector thread reads commands into
+	 * the queue of lines and writes answers from the queue of output; a worker
+	 * takes the lines, carries them out and queues their answers. Both queues
+	 * are guarded by the connection.
+	 */
+	private final class Connection implements Runnable {
+
+		private final SocketChannel channel;
+		private final Protocol protocol;
+		private SelectionKey key;
+		// Read by the selector thread only.
+		private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+		private final StringBuilder line = new StringBuilder();
+		private boolean lineTooLong;
+		// Guarded by this connection.
+		private final Queue<String> lines = new ArrayDeque<String>();
+		private final Queue<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+		private int pendingOutput; // Bytes
+		private boolean busy; // A worker is carrying out lines
+		private boolean closing; // Close once all output is written
+		private boolean closed;
+
+		private Connection(SocketChannel channel, Protocol protocol) {
+			this.channel = channel;
+			this.protocol = protocol;
+		}
+
+		/**
+		 * Reads what the client sent, queuing complete lines. Called on the
+		 * selector thread.
+		 */
+		private void read() throws IOException {
+
+			int read = channel.read(input);
+			if (read < 0) {
+				// Answer what was sent before the end of the input.
+				synchronized (this) {
+					closing = true;
+				}
+				return;
+			}
+
+			input.flip();
+			synchronized (this) {
+				while (input.hasRemaining()) {
+					char c = (char) (input.get() & 0xff);
+					if (c == '\n') {
+						if (lineTooLong) {
+							queueOutput("info string Line too long\n");
+						} else {
+							lines.add(line.toString());
+						}
+						line.setLength(0);
+						lineTooLong = false;
+					} else if (line.length() == MAX_LINE_LENGTH) {
+						lineTooLong = true;
+					} else if (c != '\r') {
+						line.append(c);
+					}
+				}
+				if (!busy && !lines.isEmpty()) {
+					busy = true;
+					workers.execute(this);
+				}
+			}
+			input.clear();
+
+		}
+
+		/**
+		 * Writes as much queued output as the socket takes. Called on the
+		 * selector thread.
+		 */
+		private void write() throws IOException {
+			synchronized (this) {
+				ByteBuffer buffer;
+				while ((buffer = output.peek()) != null) {
+					pendingOutput -= channel.write(buffer);
+					if (buffer.hasRemaining()) {
+						return;
+					}
+					output.poll();
+				}
+			}
+		}
+
+		/**
+		 * Reads while the client is within its limits, writes while output is
+		 * queued, and closes the connection once it is done. Called on the
+		 * selector thread.
+		 */
+		private void update() {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				if (closing && !busy && output.isEmpty()) {
+					close();
+					return;
+				}
+				int ops = 0;
+				if (!closing && lines.size() < MAX_PENDING_LINES
+						&& pendingOutput < MAX_PENDING_OUTPUT) {
+					ops |= SelectionKey.OP_READ;
+				}
+				if (!output.isEmpty()) {
+					ops |= SelectionKey.OP_WRITE;
+				}
+				key.interestOps(ops);
+			}
+		}
+
+		/**
+		 * Closes the connection, dropping any commands not carried out yet.
+		 * Called on the selector thread.
+		 */
+		private void close() {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				lines.clear();
+				output.clear();
+			}
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.log(Level.FINE, "Could not close a connection.\n" + e);
+			}
+			--connections;
+		}
+
+		/**
+		 * Carries out the queued lines, then hands the answers to the
+		 * selector thread. Called on a worker.
+		 */
+		@Override
+		public void run() {
+
+			StringWriter answers = new StringWriter();
+			while (true) {
+				String command;
+				synchronized (this) {
+					// Hand over the answers once there are no more commands
+					// or they fill a buffer.
+					if (lines.isEmpty()
+							|| answers.getBuffer().length() >= BUFFER_SIZE) {
+						queueOutput(answers.toString());
+						answers.getBuffer().setLength(0);
+						changed.add(this);
+						selector.wakeup();
+					}
+					command = lines.poll();
+					if (command == null) {
+						busy = false;
+						return;
+					}
+				}
+
+				boolean more = true;
+				try {
+					more = protocol.handle(command, answers);
+				} catch (IOException e) {
+					// A string writer never fails.
+				} catch (RuntimeException e) {
+					logger.log(Level.WARNING, "Command failed: " + command
+							+ "\n" + e);
+					answers.write("info string Command failed\n");
+				}
+				if (!more) {
+					synchronized (this) {
+						closing = true;
+						lines.clear();
+					}
+				}
+			}
+
+		}
+
+		/**
+		 * Queues text to be written to the client. Called with this
+		 * connection's lock held.
+		 */
+		private void queueOutput(String text) {
+			if (closed || text.isEmpty()) {
+				return;
+			}
+			ByteBuffer buffer = encode(text);
+			pendingOutput += buffer.remaining();
+			output.add(buffer);
+		}
+
+	}
+
+}
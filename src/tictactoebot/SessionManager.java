@@ -0,0 +1,182 @@
+package tictactoebot;
+
+import java.io.Closeable;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many games at once, keyed by ID. Games are state machines (see Game)
+ * that hold no thread while they wait for a move, so the number of games is
+ * limited only by memory: a game costs its board and players, plus a
+ * transposition table per computer player (see the ComputerPlayer
+ * constructors for a smaller one).
+ * 
+ * Games nobody has moved in for the idle timeout are aborted and removed, so
+ * abandoned games do not pile up. Finished games stay until they are removed
+ * or go idle, so their results can still be read.
+ * 
+ * @author rongil
+ *
+ */
+public class SessionManager implements Closeable {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Time a game may go without a move by default, in milliseconds.
+	public static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000;
+
+	private final ConcurrentMap<Long, Game> games =
+			new ConcurrentHashMap<Long, Game>();
+	private final AtomicLong nextID = new AtomicLong(1);
+	// Chooses who moves first in every game.
+	private final Random random = new Random();
+	private final long idleTimeout; // Milliseconds
+	private final ScheduledExecutorService evictor;
+	// Where every game is logged (null if games are not).
+	private volatile GameRecordWriter recordWriter;
+
+	/**
+	 * Creates a session manager with the default idle timeout.
+	 */
+	public SessionManager() {
+		this(DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Creates a session manager that removes games idle for longer than the
+	 * given time. Idle games are looked for every tenth of that time.
+	 * 
+	 * @param idleTimeout
+	 *            - the time a game may go without a move, in milliseconds
+	 */
+	public SessionManager(long idleTimeout) {
+		if (idleTimeout <= 0) {
+			throw new IllegalArgumentException(
+					"The idle timeout must be positive: " + idleTimeout);
+		}
+		this.idleTimeout = idleTimeout;
+		evictor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "session-evictor");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		long period = Math.max(idleTimeout / 10, 1);
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictIdleGames();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets where games created from now on are logged once they end.
+	 * 
+	 * @param recordWriter
+	 *            - the writer, or null to log nothing (by default)
+	 */
+	public void setRecordWriter(GameRecordWriter recordWriter) {
+		this.recordWriter = recordWriter;
+	}
+
+	/**
+	 * Creates and starts a game, choosing at random who moves first.
+	 * 
+	 * @param playerOne
+	 *            - one player
+	 * @param playerTwo
+	 *            - the other player
+	 * @param board
+	 *            - the board to play on (owned by the game from now on)
+	 * @return - the game, already waiting for its first move
+	 */
+	public Game createGame(Player playerOne, Player playerTwo, Board board) {
+		Game game = new Game(nextID.getAndIncrement(), playerOne, playerTwo,
+				board);
+		game.setRecordWriter(recordWriter);
+		games.put(game.getID(), game);
+		int firstTurn;
+		synchronized (random) {
+			firstTurn = random.nextInt(2);
+		}
+		game.start(firstTurn);
+		return game;
+	}
+
+	/**
+	 * Looks a game up by ID.
+	 * 
+	 * @param id
+	 *            - the game's ID
+	 * @return - the game, or null if there is none (or it was removed)
+	 */
+	public Game getGame(long id) {
+		return games.get(id);
+	}
+
+	/**
+	 * Removes a game, aborting it if it is still in progress.
+	 * 
+	 * @param id
+	 *            - the game's ID
+	 * @return - the game, or null if there was none
+	 */
+	public Game removeGame(long id) {
+		Game game = games.remove(id);
+		if (game != null) {
+			game.abort();
+		}
+		return game;
+	}
+
+	/**
+	 * @return - the number of games hosted, finished or not
+	 */
+	public int getGameCount() {
+		return games.size();
+	}
+
+	/**
+	 * Aborts and removes every game nobody has moved in for the idle
+	 * timeout.
+	 */
+	private void evictIdleGames() {
+		long now = System.nanoTime();
+		long timeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+		int evicted = 0;
+		for (Game game : games.values()) {
+			if (now - game.getLastActivityTime() > timeout
+					&& games.remove(game.getID(), game)) {
+				game.abort();
+				++evicted;
+			}
+		}
+		if (evicted > 0) {
+			logger.log(Level.FINE, "Evicted " + evicted + " idle game(s).");
+		}
+	}
+
+	/**
+	 * Stops looking for idle games and aborts every game still hosted.
+	 */
+	@Override
+	public void close() {
+		evictor.shutdownNow();
+		for (Long id : games.keySet()) {
+			removeGame(id);
+		}
+	}
+
+}
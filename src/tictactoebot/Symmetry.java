@@ -0,0 +1,106 @@
+package tictactoebot;
+
+/**
+ * The symmetries of a board: the rotations and reflections that map the board
+ * onto itself. A square board has eight (the dihedral group D4), while a
+ * rectangular board only has four (identity, both mirrors, and the half
+ * turn). Each symmetry is a permutation of square indices, which is used to
+ * map positions to a canonical representative and to map moves between a
+ * position and its canonical form.
+ *
+ * @author rongil
+ *
+ */
+public final class Symmetry {
+
+	public static final int IDENTITY = 0;
+
+	// Square permutations, indexed by symmetry and then by square.
+	private final int[][] permutations;
+	// The symmetry that undoes each symmetry.
+	private final int[] inverses;
+
+	/**
+	 * Builds the symmetries of a board.
+	 *
+	 * @param width
+	 *            - the number of columns
+	 * @param height
+	 *            - the number of rows
+	 */
+	public Symmetry(int width, int height) {
+
+		int squares = width * height;
+		int count = width == height ? 8 : 4;
+		int lastX = width - 1;
+		int lastY = height - 1;
+		permutations = new int[count][squares];
+		for (int square = 0; square < squares; ++square) {
+			int x = square % width;
+			int y = square / width;
+			permutations[0][square] = y * width + x; // Identity
+			permutations[1][square] = y * width + (lastX - x); // Mirror x
+			permutations[2][square] = (lastY - y) * width + x; // Mirror y
+			permutations[3][square] = (lastY - y) * width + (lastX - x); // 180
+			if (count == 8) {
+				// Only possible when width == height.
+				permutations[4][square] = x * width + (lastY - y); // Rotate 90
+				permutations[5][square] = (lastX - x) * width + y; // 270
+				permutations[6][square] = x * width + y; // Main diagonal
+				permutations[7][square] = (lastX - x) * width + (lastY - y);
+			}
+		}
+
+		// Find each inverse by composing every pair of symmetries.
+		inverses = new int[count];
+		for (int i = 0; i < count; ++i) {
+			for (int j = 0; j < count; ++j) {
+				boolean isInverse = true;
+				for (int square = 0; square < squares; ++square) {
+					if (permutations[j][permutations[i][square]] != square) {
+						isInverse = false;
+						break;
+					}
+				}
+				if (isInverse) {
+					inverses[i] = j;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Returns the number of symmetries, including the identity.
+	 *
+	 * @return - 8 for a square board, 4 otherwise
+	 */
+	public int getCount() {
+		return permutations.length;
+	}
+
+	/**
+	 * Maps a square to its image under a symmetry.
+	 *
+	 * @param symmetry
+	 *            - the symmetry to apply
+	 * @param square
+	 *            - the square index
+	 * @return - the transformed square index
+	 */
+	public int transformSquare(int symmetry, int square) {
+		return permutations[symmetry][square];
+	}
+
+	/**
+	 * Returns the symmetry that undoes the given one.
+	 *
+	 * @param symmetry
+	 *            - the symmetry to invert
+	 * @return - the inverse symmetry
+	 */
+	public int inverse(int symmetry) {
+		return inverses[symmetry];
+	}
+
+}
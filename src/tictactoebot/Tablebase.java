@@ -0,0 +1,226 @@
+package tictactoebot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import tictactoebot.Board.Move;
+
+/**
+ * Perfect-play table of every reachable position of the standard 3x3 board,
+ * solved once and stored in a compact binary file that is memory-mapped for
+ * lookups.
+ * 
+ * A position is indexed by the player to move and the base-3 number formed by
+ * its squares (0 = empty, 1 = X, 2 = O), so no hashing or searching is needed
+ * to find an entry. Each entry is two bytes: the score for the player to move
+ * and the square of the best move. Scores follow the search's convention of
+ * preferring faster wins and slower losses.
+ * 
+ * @author rongil
+ *
+ */
+public class Tablebase {
+
+	// File layout: | magic (4) | entry count (4) | entries (2 each) |
+	private static final int MAGIC = 0x54544254; // "TTBT"
+	private static final int HEADER_SIZE = 8;
+	private static final int ENTRY_SIZE = 2;
+
+	// Positions per player to move (3 states for each of the 9 squares).
+	private static final int POSITIONS = 19683;
+	private static final int ENTRIES = 2 * POSITIONS;
+
+	// Move byte for positions that are unreachable or already over.
+	private static final int NO_MOVE = 0xFF;
+	// Score of a win, before subtracting the number of moves played.
+	private static final int WIN = 100;
+
+	private final ByteBuffer table;
+
+	private Tablebase(ByteBuffer table) {
+		this.table = table;
+	}
+
+	/**
+	 * Memory-maps a tablebase file created by generate.
+	 * 
+	 * @param file
+	 *            - the tablebase file
+	 * @return - the loaded tablebase
+	 * @throws IOException
+	 *             - if the file cannot be read or is not a tablebase
+	 */
+	public static Tablebase open(File file) throws IOException {
+
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			if (channel.size() != HEADER_SIZE + ENTRIES * ENTRY_SIZE) {
+				throw new IOException("Unexpected tablebase size: "
+						+ channel.size());
+			}
+			// The mapping stays valid after the channel is closed.
+			MappedByteBuffer table = channel.map(MapMode.READ_ONLY, 0,
+					channel.size());
+			if (table.getInt(0) != MAGIC || table.getInt(4) != ENTRIES) {
+				throw new IOException("Not a tablebase file: " + file);
+			}
+			return new Tablebase(table);
+		} finally {
+			input.close();
+		}
+
+	}
+
+	/**
+	 * Solves every position reachable from the empty board, with either
+	 * player starting, and writes the table to a file.
+	 * 
+	 * @param file
+	 *            - the file to write
+	 * @return - the number of reachable positions solved
+	 * @throws IOException
+	 *             - if the file cannot be written
+	 */
+	public static int generate(File file) throws IOException {
+
+		byte[] scores = new byte[ENTRIES];
+		byte[] moves = new byte[ENTRIES];
+		boolean[] solved = new boolean[ENTRIES];
+
+		Board board = new Board();
+		solve(board, Board.X, scores, moves, solved);
+		solve(board, Board.O, scores, moves, solved);
+
+		ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + ENTRIES
+				* ENTRY_SIZE);
+		table.putInt(MAGIC);
+		table.putInt(ENTRIES);
+		int reachable = 0;
+		for (int index = 0; index < ENTRIES; ++index) {
+			if (solved[index]) {
+				++reachable;
+				table.put(scores[index]);
+				table.put(moves[index]);
+			} else {
+				table.put((byte) 0);
+				table.put((byte) NO_MOVE);
+			}
+		}
+
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			output.setLength(0);
+			output.write(table.array());
+		} finally {
+			output.close();
+		}
+		return reachable;
+
+	}
+
+	/**
+	 * Solves a position with a full-depth negamax, recording the score and
+	 * best move of it and every position below it.
+	 * 
+	 * @return - the score for the player to move
+	 */
+	private static int solve(Board board, int playerID, byte[] scores,
+			byte[] moves, boolean[] solved) {
+
+		int index = getIndex(board, playerID);
+		if (solved[index]) {
+			return scores[index];
+		}
+
+		int result = board.checkGameOver();
+		int bestValue;
+		int bestSquare = NO_MOVE;
+		if (result == Board.TIE) {
+			bestValue = 0;
+		} else if (result != Board.INCOMPLETE) {
+			// The previous move won, so the player to move has lost.
+			bestValue = -WIN + board.getNumberOfMoves();
+		} else {
+			int otherPlayerID = playerID == Board.X ? Board.O : Board.X;
+			bestValue = Integer.MIN_VALUE;
+			for (int square = board.getNextValidSquare(0);
+					square != Board.NO_SQUARE;
+					square = board.getNextValidSquare(square + 1)) {
+				board.makeMove(square, playerID);
+				int value = -solve(board, otherPlayerID, scores, moves, solved);
+				board.unmakeMove(square);
+				if (value > bestValue) {
+					bestValue = value;
+					bestSquare = square;
+				}
+			}
+		}
+
+		scores[index] = (byte) bestValue;
+		moves[index] = (byte) bestSquare;
+		solved[index] = true;
+		return bestValue;
+
+	}
+
+	/**
+	 * Computes the table index of a position.
+	 */
+	private static int getIndex(Board board, int playerID) {
+		int index = 0;
+		for (int y = 2; y >= 0; --y) {
+			for (int x = 2; x >= 0; --x) {
+				index = index * 3 + board.getPositionValue(x, y);
+			}
+		}
+		return playerID == Board.O ? index + POSITIONS : index;
+	}
+
+	/**
+	 * Checks whether the tablebase covers a board's positions.
+	 * 
+	 * @param board
+	 *            - the board
+	 * @return - true for the standard 3x3 board
+	 */
+	public boolean covers(Board board) {
+		return board.getGeometry() == BoardGeometry.STANDARD;
+	}
+
+	/**
+	 * Looks up the best move of a position.
+	 * 
+	 * @param board
+	 *            - the current board
+	 * @param playerID
+	 *            - the player to move
+	 * @return - the best move, or null if the position is unreachable or over
+	 */
+	public Move getBestMove(Board board, int playerID) {
+		int offset = HEADER_SIZE + getIndex(board, playerID) * ENTRY_SIZE;
+		int square = table.get(offset + 1) & 0xFF;
+		return square == NO_MOVE ? null : board.getMove(square);
+	}
+
+	/**
+	 * Looks up the perfect-play score of a position.
+	 * 
+	 * @param board
+	 *            - the current board
+	 * @param playerID
+	 *            - the player to move
+	 * @return - the score for the player to move (positive if winning, zero
+	 *         if drawn, negative if losing)
+	 */
+	public int getScore(Board board, int playerID) {
+		int offset = HEADER_SIZE + getIndex(board, playerID) * ENTRY_SIZE;
+		return table.get(offset);
+	}
+
+}
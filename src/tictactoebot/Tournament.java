@@ -0,0 +1,404 @@
+package tictactoebot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import tictactoebot.Board.Move;
+import tictactoebot.Player.ComputerPlayer;
+
+/**
+ * Plays many computer versus computer games between two engines (search
+ * types) without printing any boards, to measure how changes to an engine
+ * affect its strength and speed.
+ * 
+ * Games run concurrently, each on its own thread, with every move searched on
+ * a shared Engine. Each game starts with a few random moves so the games are
+ * not all identical. Every opening is played twice, with each engine moving
+ * first once, so neither engine is favored by the openings.
+ * 
+ * Results are written to a file as soon as each game ends: one CSV line per
+ * game, then a summary of wins, draws, losses and move latency percentiles
+ * for each engine.
+ * 
+ * @author rongil
+ *
+ */
+public class Tournament {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// Random moves played before the engines take over.
+	private static final int DEFAULT_OPENING_MOVES = 2;
+	// Engine names used in the results.
+	private static final String[] ENGINE_NAMES = { "A", "B" };
+	private static final int DRAW = -1;
+
+	private final Engine engine;
+	private final BoardGeometry geometry;
+	private final int[] searchTypes; // Indexed by engine
+	private SearchLimits limits = SearchLimits.DEFAULT;
+	private int openingMoves = DEFAULT_OPENING_MOVES;
+	private int concurrency;
+	private long seed;
+	// Where every game is logged (null if games are not).
+	private GameRecordWriter recordWriter;
+
+	/**
+	 * Creates a tournament between two engines. Engine A plays X and engine B
+	 * plays O.
+	 * 
+	 * @param engine
+	 *            - the engine running the searches
+	 * @param geometry
+	 *            - the shape of the board to play on
+	 * @param searchTypeA
+	 *            - the search type of engine A
+	 * @param searchTypeB
+	 *            - the search type of engine B
+	 */
+	public Tournament(Engine engine, BoardGeometry geometry, int searchTypeA,
+			int searchTypeB) {
+		this.engine = engine;
+		this.geometry = geometry;
+		this.searchTypes = new int[] { searchTypeA, searchTypeB };
+		// More games than search threads would only make moves queue.
+		this.concurrency = engine.getThreads();
+	}
+
+	/**
+	 * Sets how long each engine may search its moves. A clock starts full at
+	 * the beginning of every game.
+	 * 
+	 * @param limits
+	 *            - the limits (SearchLimits.DEFAULT by default)
+	 */
+	public void setLimits(SearchLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Sets the number of random moves played at the start of every game.
+	 * 
+	 * @param openingMoves
+	 *            - the number of random moves
+	 */
+	public void setOpeningMoves(int openingMoves) {
+		this.openingMoves = openingMoves;
+	}
+
+	/**
+	 * Sets the number of games played at the same time.
+	 * 
+	 * @param concurrency
+	 *            - the number of games (the engine's thread count by default)
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Sets the seed of the random openings, so a tournament can be repeated
+	 * with the same openings.
+	 * 
+	 * @param seed
+	 *            - the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets where every game, including its opening, is logged.
+	 * 
+	 * @param recordWriter
+	 *            - the writer, or null to log nothing (by default)
+	 */
+	public void setRecordWriter(GameRecordWriter recordWriter) {
+		this.recordWriter = recordWriter;
+	}
+
+	/**
+	 * Plays the tournament, writing each game's result to a file as soon as
+	 * the game ends. Blocks until every game has been played.
+	 * 
+	 * @param games
+	 *            - the number of games to play
+	 * @param file
+	 *            - the file to write the results to
+	 * @throws IOException
+	 *             - if the results cannot be written
+	 * @throws InterruptedException
+	 *             - if the thread is interrupted while waiting for games
+	 */
+	public void run(int games, File file) throws IOException,
+			InterruptedException {
+
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "tournament-"
+								+ threadNumber.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		CompletionService<GameResult> completionService =
+				new ExecutorCompletionService<GameResult>(executor);
+
+		Writer output = new BufferedWriter(new FileWriter(file));
+		try {
+			output.write("# Engine A: "
+					+ Search.SEARCH_TYPE_NAMES[searchTypes[0]] + ", engine B: "
+					+ Search.SEARCH_TYPE_NAMES[searchTypes[1]] + ", "
+					+ geometry + ", " + limits + "\n");
+			output.write("game,first,winner,moves,median_us,max_us\n");
+			output.flush();
+
+			for (int game = 0; game < games; ++game) {
+				final int gameNumber = game;
+				completionService.submit(new Callable<GameResult>() {
+					@Override
+					public GameResult call() {
+						return playGame(gameNumber);
+					}
+				});
+			}
+
+			// Record games in the order they finish.
+			int[] wins = new int[ENGINE_NAMES.length];
+			int draws = 0;
+			Latencies[] latencies = { new Latencies(), new Latencies() };
+			long startTime = System.currentTimeMillis();
+			for (int i = 0; i < games; ++i) {
+				GameResult record;
+				try {
+					record = completionService.take().get();
+				} catch (ExecutionException e) {
+					throw new IOException("A game failed.", e.getCause());
+				}
+
+				if (record.winner == DRAW) {
+					++draws;
+				} else {
+					++wins[record.winner];
+				}
+				Latencies gameLatencies = new Latencies();
+				for (int side = 0; side < ENGINE_NAMES.length; ++side) {
+					latencies[side].addAll(record.latencies[side]);
+					gameLatencies.addAll(record.latencies[side]);
+				}
+				output.write(record.game + "," + ENGINE_NAMES[record.first]
+						+ "," + (record.winner == DRAW ? "draw"
+								: ENGINE_NAMES[record.winner]) + ","
+						+ record.moves + "," + gameLatencies.getPercentile(50)
+						+ "," + gameLatencies.getPercentile(100) + "\n");
+				output.flush();
+			}
+
+			// Summarize the tournament from engine A's point of view.
+			output.write("# A wins/draws/losses: " + wins[0] + "/" + draws
+					+ "/" + wins[1] + "\n");
+			for (int side = 0; side < ENGINE_NAMES.length; ++side) {
+				Latencies engineLatencies = latencies[side];
+				output.write("# " + ENGINE_NAMES[side]
+						+ " move latency (us): p50 "
+						+ engineLatencies.getPercentile(50) + ", p90 "
+						+ engineLatencies.getPercentile(90) + ", p99 "
+						+ engineLatencies.getPercentile(99) + ", max "
+						+ engineLatencies.getPercentile(100) + "\n");
+			}
+			logger.log(Level.INFO, "Played " + games + " games in "
+					+ (System.currentTimeMillis() - startTime) + " ms.");
+		} finally {
+			executor.shutdownNow();
+			output.close();
+		}
+
+	}
+
+	/**
+	 * Plays one game of the tournament.
+	 * 
+	 * @param game
+	 *            - the game number
+	 * @return - the result of the game
+	 */
+	private GameResult playGame(int game) {
+
+		ComputerPlayer[] players = { createPlayer(Board.X, searchTypes[0]),
+				createPlayer(Board.O, searchTypes[1]) };
+		GameResult record = new GameResult(game);
+		int turn = record.first;
+		Board board = new Board(geometry);
+		int[] squares = new int[geometry.getSquares()];
+		// Squares played, in order, for the game's record.
+		int[] played = new int[geometry.getSquares()];
+		long gameStartTime = System.currentTimeMillis();
+
+		// Both games of a pair get the same opening.
+		Random random = new Random(seed + game / 2);
+		for (int i = 0; i < openingMoves
+				&& board.checkGameOver() == Board.INCOMPLETE; ++i) {
+			int count = board.getValidSquares(squares);
+			int square = squares[random.nextInt(count)];
+			played[board.getNumberOfMoves()] = square;
+			board.makeMove(square, players[turn].getPlayerID());
+			turn = 1 - turn;
+		}
+		int opening = board.getNumberOfMoves();
+
+		boolean forfeited = false;
+		while (board.checkGameOver() == Board.INCOMPLETE) {
+			long startTime = System.nanoTime();
+			Move move = players[turn].getMove(board);
+			record.latencies[turn].add(TimeUnit.NANOSECONDS
+					.toMicros(System.nanoTime() - startTime));
+			int square = move == null ? Board.NO_SQUARE : board
+					.toSquare(move);
+			if (square == Board.NO_SQUARE
+					|| board.getSquareValue(square) != Board.EMPTY) {
+				// An invalid move forfeits the game.
+				record.winner = 1 - turn;
+				forfeited = true;
+				break;
+			}
+			board.makeMove(square, players[turn].getPlayerID());
+			played[board.getNumberOfMoves() - 1] = square;
+			SearchLimits clock = players[turn].getLimits();
+			if (clock.isClock() && clock.getTime() < 0) {
+				// So does running out of time, even with a winning move.
+				record.winner = 1 - turn;
+				forfeited = true;
+				break;
+			}
+			++record.moves;
+			turn = 1 - turn;
+		}
+
+		// A forfeit stands even if the late move also completed a line.
+		if (!forfeited) {
+			int result = board.checkGameOver();
+			if (result == Board.TIE) {
+				record.winner = DRAW;
+			} else if (result != Board.INCOMPLETE) {
+				record.winner = result == Board.X ? 0 : 1;
+			}
+		}
+		if (recordWriter != null) {
+			// Engine A plays X.
+			recordWriter.write(new GameRecord(geometry, searchTypes[0],
+					searchTypes[1], players[record.first].getPlayerID(),
+					record.winner == DRAW ? Board.TIE
+							: players[record.winner].getPlayerID(),
+					gameStartTime, System.currentTimeMillis() - gameStartTime,
+					record.latencies[0].getTotal() / 1000,
+					record.latencies[1].getTotal() / 1000, played,
+					board.getNumberOfMoves(), opening));
+		}
+		return record;
+
+	}
+
+	/**
+	 * Creates a quiet computer player for one game. Each player has its own
+	 * transposition table, so games do not share search results.
+	 * 
+	 * @param player
+	 *            - ID of player (O or X)
+	 * @param searchType
+	 *            - one of the search types defined by Search
+	 * @return - the computer player
+	 */
+	private ComputerPlayer createPlayer(int player, int searchType) {
+		ComputerPlayer computerPlayer = new ComputerPlayer(player, null,
+				engine);
+		computerPlayer.setSearchType(searchType);
+		computerPlayer.setLimits(limits);
+		computerPlayer.setQuiet(true);
+		return computerPlayer;
+	}
+
+	/**
+	 * The result of one game.
+	 */
+	private static final class GameResult {
+
+		private final int game;
+		private final int first; // Engine that moved first
+		private int winner; // Engine that won, or DRAW
+		private int moves; // Moves chosen by the engines
+		// Move latencies in microseconds, indexed by engine.
+		private final Latencies[] latencies = { new Latencies(),
+				new Latencies() };
+
+		private GameResult(int game) {
+			this.game = game;
+			this.first = game % 2;
+		}
+	}
+
+	/**
+	 * A growing list of latencies that reports percentiles.
+	 */
+	private static final class Latencies {
+
+		private long[] values = new long[16];
+		private int count;
+
+		private void add(long value) {
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = value;
+		}
+
+		private long getTotal() {
+			long total = 0;
+			for (int i = 0; i < count; ++i) {
+				total += values[i];
+			}
+			return total;
+		}
+
+		private void addAll(Latencies latencies) {
+			for (int i = 0; i < latencies.count; ++i) {
+				add(latencies.values[i]);
+			}
+		}
+
+		/**
+		 * Gets a percentile using the nearest-rank method.
+		 * 
+		 * @param percentile
+		 *            - the percentile (100 for the maximum)
+		 * @return - the latency, or 0 if there are none
+		 */
+		private long getPercentile(int percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			Arrays.sort(values, 0, count);
+			int rank = (int) Math.ceil(percentile / 100.0 * count);
+			return values[Math.max(rank, 1) - 1];
+		}
+	}
+
+}
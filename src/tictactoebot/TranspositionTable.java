@@ -0,0 +1,156 @@
+package tictactoebot;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of previously searched positions, keyed by the
+ * position's Zobrist hash. Each entry records the depth the position was
+ * searched to, the type of bound the score represents, the score itself, and
+ * the best move found (as a square index).
+ * 
+ * Entries are packed into a single long and stored next to the key XORed with
+ * that long, so a torn read from a concurrent writer is detected as a miss
+ * instead of returning a mismatched entry.
+ * 
+ * @author rongil
+ *
+ */
+public class TranspositionTable {
+
+	// Default number of entries (must be a power of two).
+	public static final int DEFAULT_SIZE = 1 << 16;
+
+	// Bound types.
+	public static final int EXACT = 1;
+	public static final int LOWER_BOUND = 2; // Score is at least this value
+	public static final int UPPER_BOUND = 3; // Score is at most this value
+
+	// Returned by probe when the position is not in the table.
+	public static final long MISS = 0;
+
+	// Value stored as the move when no best move is known.
+	public static final int NO_MOVE = -1;
+
+	// Depth stored for positions whose whole subtree was searched, making the
+	// entry valid for a search of any depth.
+	public static final int RESOLVED = 0xFF;
+
+	// Entry layout: | score (32) | move (16) | depth (8) | bound (8) |
+	private static final int BOUND_SHIFT = 0;
+	private static final int DEPTH_SHIFT = 8;
+	private static final int MOVE_SHIFT = 16;
+	private static final int SCORE_SHIFT = 32;
+
+	// Table storage.
+	private final long[] keys;
+	private final long[] entries;
+	private final int indexMask;
+
+	/**
+	 * Initializes a new table with the default number of entries.
+	 */
+	public TranspositionTable() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Initializes a new table with the given number of entries.
+	 * 
+	 * @param size
+	 *            - the number of entries, which must be a power of two
+	 */
+	public TranspositionTable(int size) {
+		if (size <= 0 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException(
+					"Table size must be a power of two: " + size);
+		}
+		keys = new long[size];
+		entries = new long[size];
+		indexMask = size - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 * 
+	 * @param key
+	 *            - the Zobrist hash of the position
+	 * @return - the packed entry, or MISS if the position is not stored
+	 */
+	public long probe(long key) {
+		int index = (int) key & indexMask;
+		long entry = entries[index];
+		if (entry != MISS && (keys[index] ^ entry) == key) {
+			return entry;
+		}
+		return MISS;
+	}
+
+	/**
+	 * Stores a position, replacing whatever occupied its slot.
+	 * 
+	 * @param key
+	 *            - the Zobrist hash of the position
+	 * @param depth
+	 *            - the remaining depth the position was searched to
+	 * @param bound
+	 *            - EXACT, LOWER_BOUND or UPPER_BOUND
+	 * @param score
+	 *            - the score of the position for the player to move
+	 * @param move
+	 *            - the square index of the best move, or NO_MOVE
+	 */
+	public void store(long key, int depth, int bound, int score, int move) {
+		int index = (int) key & indexMask;
+		long entry = ((long) score << SCORE_SHIFT)
+				| ((long) (move & 0xFFFF) << MOVE_SHIFT)
+				| ((long) (depth & 0xFF) << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT);
+		keys[index] = key ^ entry;
+		entries[index] = entry;
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(entries, MISS);
+	}
+
+	/**
+	 * @param entry
+	 *            - a packed entry returned by probe
+	 * @return - the bound type of the entry
+	 */
+	public static int getBound(long entry) {
+		return (int) (entry >>> BOUND_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param entry
+	 *            - a packed entry returned by probe
+	 * @return - the depth the entry was searched to
+	 */
+	public static int getDepth(long entry) {
+		return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param entry
+	 *            - a packed entry returned by probe
+	 * @return - the square index of the best move, or NO_MOVE
+	 */
+	public static int getMove(long entry) {
+		return (short) (entry >>> MOVE_SHIFT);
+	}
+
+	/**
+	 * @param entry
+	 *            - a packed entry returned by probe
+	 * @return - the score of the entry
+	 */
+	public static int getScore(long entry) {
+		return (int) (entry >>> SCORE_SHIFT);
+	}
+
+}
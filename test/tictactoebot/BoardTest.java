@@ -0,0 +1,185 @@
+package tictactoebot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import tictactoebot.Board.Move;
+
+/**
+ * Checks win detection and make/unmake directly on the board, independently
+ * of the searches, on the standard board and on larger m,n,k boards.
+ * 
+ * @author rongil
+ *
+ */
+public class BoardTest {
+
+	// Width, height and k of the boards tested.
+	private static final int[][] GEOMETRIES = { { 3, 3, 3 }, { 4, 4, 4 },
+			{ 5, 5, 4 }, { 7, 6, 4 }, { 15, 15, 5 } };
+
+	@Test
+	public void detectsWinsAlongEveryEdge() {
+		for (int[] size : GEOMETRIES) {
+			BoardGeometry geometry = BoardGeometry.of(size[0], size[1],
+					size[2]);
+			int w = geometry.getWidth();
+			int h = geometry.getHeight();
+			int k = geometry.getWinLength();
+			// Start and direction of runs touching the edges of the board.
+			int[][] runs = { { 0, 0, 1, 0 }, { w - k, h - 1, 1, 0 },
+					{ 0, h - k, 0, 1 }, { w - 1, 0, 0, 1 }, { 0, 0, 1, 1 },
+					{ w - k, h - k, 1, 1 }, { w - 1, 0, -1, 1 },
+					{ k - 1, h - k, -1, 1 } };
+			for (int[] run : runs) {
+				for (int player = Board.X; player <= Board.O; ++player) {
+					Board board = new Board(geometry);
+					for (int i = 0; i < k; ++i) {
+						assertEquals(Board.INCOMPLETE, board.checkGameOver(),
+								geometry + " run " + run[0] + "," + run[1]);
+						board.makeMove(geometry.toSquare(run[0] + i * run[2],
+								run[1] + i * run[3]), player);
+					}
+					assertEquals(player, board.checkGameOver(), geometry
+							+ " run " + run[0] + "," + run[1] + " direction "
+							+ run[2] + "," + run[3]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void ignoresRunsWrappingToTheNextRow() {
+		BoardGeometry gomoku = BoardGeometry.of(15, 15, 5);
+		// Row, diagonal and anti-diagonal runs that leave the right or left
+		// edge and carry on at the other side.
+		assertNoWin(gomoku, 12, 13, 14, 15, 16);
+		assertNoWin(gomoku, 13, 29, 45, 61, 77);
+		assertNoWin(gomoku, 1, 15, 29, 43, 57);
+		assertNoWin(BoardGeometry.of(4, 4, 4), 2, 3, 4, 5);
+		assertNoWin(BoardGeometry.of(5, 5, 4), 3, 4, 5, 6);
+	}
+
+	@Test
+	public void unmakeMoveRestoresHashesAndLineCounts() {
+		Random random = new Random(0);
+		for (int[] size : GEOMETRIES) {
+			BoardGeometry geometry = BoardGeometry.of(size[0], size[1],
+					size[2]);
+			for (int game = 0; game < 20; ++game) {
+				Board board = new Board(geometry);
+				int[] played = new int[geometry.getSquares()];
+				int[] squares = new int[geometry.getSquares()];
+				int player = Board.X;
+				while (board.checkGameOver() == Board.INCOMPLETE) {
+					long[] hashes = getHashes(board);
+					int[][] lineCounts = getLineCounts(board);
+					int count = board.getValidSquares(squares);
+
+					// Try a move and take it back.
+					int square = squares[random.nextInt(count)];
+					board.makeMove(square, player);
+					assertLineCounts(board);
+					board.unmakeMove(square);
+					assertArrayEquals(hashes, getHashes(board), geometry
+							.toString());
+					assertArrayEquals(lineCounts, getLineCounts(board),
+							geometry.toString());
+					assertEquals(Board.INCOMPLETE, board.checkGameOver());
+
+					// Then play another one.
+					square = squares[random.nextInt(count)];
+					played[board.getNumberOfMoves()] = square;
+					board.makeMove(square, player);
+					assertLineCounts(board);
+					player = player == Board.X ? Board.O : Board.X;
+				}
+
+				// Taking every move back leaves an empty board.
+				while (board.getNumberOfMoves() > 0) {
+					board.unmakeMove(played[board.getNumberOfMoves() - 1]);
+				}
+				Board empty = new Board(geometry);
+				assertArrayEquals(getHashes(empty), getHashes(board));
+				assertArrayEquals(getLineCounts(empty), getLineCounts(board));
+				assertEquals(Board.INCOMPLETE, board.checkGameOver());
+			}
+		}
+	}
+
+	@Test
+	public void moveHashesDifferOnTheLargestBoard() {
+		int size = BoardGeometry.MAX_SIZE;
+		Set<Integer> hashes = new HashSet<Integer>();
+		for (int x = 0; x < size; ++x) {
+			for (int y = 0; y < size; ++y) {
+				assertTrue(hashes.add(new Move(x, y).hashCode()), x + ","
+						+ y);
+			}
+		}
+	}
+
+	/**
+	 * Plays squares for X and checks that they do not win.
+	 */
+	private static void assertNoWin(BoardGeometry geometry, int... squares) {
+		Board board = new Board(geometry);
+		for (int square : squares) {
+			board.makeMove(square, Board.X);
+		}
+		assertEquals(Board.INCOMPLETE, board.checkGameOver(), geometry
+				.toString());
+	}
+
+	/**
+	 * Checks the incremental line counts against the pieces on each line.
+	 */
+	private static void assertLineCounts(Board board) {
+		int[][] lines = board.getGeometry().getLines();
+		for (int line = 0; line < lines.length; ++line) {
+			for (int player = Board.X; player <= Board.O; ++player) {
+				int pieces = 0;
+				for (int square : lines[line]) {
+					if (board.getSquareValue(square) == player) {
+						++pieces;
+					}
+				}
+				assertEquals(pieces, board.getLineCount(player, line));
+			}
+		}
+	}
+
+	/**
+	 * Gets the hash of every symmetric version of the position, with either
+	 * player to move.
+	 */
+	private static long[] getHashes(Board board) {
+		int count = board.getGeometry().getSymmetry().getCount();
+		long[] hashes = new long[2 * count];
+		for (int symmetry = 0; symmetry < count; ++symmetry) {
+			hashes[2 * symmetry] = board.getSymmetricHash(symmetry, Board.X);
+			hashes[2 * symmetry + 1] = board.getSymmetricHash(symmetry,
+					Board.O);
+		}
+		return hashes;
+	}
+
+	private static int[][] getLineCounts(Board board) {
+		int[][] lines = board.getGeometry().getLines();
+		int[][] counts = new int[Board.O + 1][lines.length];
+		for (int player = Board.X; player <= Board.O; ++player) {
+			for (int line = 0; line < lines.length; ++line) {
+				counts[player][line] = board.getLineCount(player, line);
+			}
+		}
+		return counts;
+	}
+
+}
@@ -0,0 +1,153 @@
+package tictactoebot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes game records to a file and reads them back, including a file whose
+ * last record was cut short by a crash.
+ *
+ * @author rongil
+ *
+ */
+public class GameRecordTest {
+
+	@TempDir
+	static File directory;
+
+	@Test
+	public void readsBackWhatWasWritten() throws IOException {
+		File file = new File(directory, "roundtrip.rec");
+		GameRecord[] records = { createTicTacToeRecord(0),
+				createGomokuRecord(3) };
+		writeRecords(file, records);
+
+		GameRecordReader reader = GameRecordReader.open(file);
+		try {
+			for (GameRecord record : records) {
+				assertTrue(reader.hasNext());
+				assertRecordEquals(record, reader.next());
+			}
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void dropsTruncatedTrailingRecord() throws IOException {
+		File file = new File(directory, "truncated.rec");
+		GameRecord first = createTicTacToeRecord(0);
+		writeRecords(file, first);
+		long length = file.length();
+
+		// The start of a record, as a crash mid-write would leave it.
+		GameRecord partial = createGomokuRecord(3);
+		ByteBuffer buffer = ByteBuffer.allocate(partial.getSize());
+		partial.encode(buffer);
+		FileOutputStream output = new FileOutputStream(file, true);
+		try {
+			output.write(buffer.array(), 0, partial.getSize() - 2);
+		} finally {
+			output.close();
+		}
+
+		GameRecordReader reader = GameRecordReader.open(file);
+		try {
+			assertRecordEquals(first, reader.next());
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+
+		// Reopening for writing drops the partial record before appending.
+		GameRecord second = createGomokuRecord(0);
+		writeRecords(file, second);
+		assertEquals(length + second.getSize(), file.length());
+		reader = GameRecordReader.open(file);
+		try {
+			assertRecordEquals(first, reader.next());
+			assertRecordEquals(second, reader.next());
+			assertFalse(reader.hasNext());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void statisticsSkipOpeningMoves() {
+		// O opened and played 2 of the 3 random moves, so X searched 3 of
+		// its 4 moves and O 3 of its 5.
+		GameStatistics statistics = new GameStatistics();
+		statistics.add(createGomokuRecord(3));
+		String summary = statistics.toString();
+		assertTrue(summary.contains("pvs: 1/0/0 wins/draws/losses, "
+				+ "100 ms per move"), summary);
+		assertTrue(summary.contains("negamax: 0/0/1 wins/draws/losses, "
+				+ "200 ms per move"), summary);
+	}
+
+	/**
+	 * A drawn game of Tic-Tac-Toe between minimax and a human.
+	 */
+	private static GameRecord createTicTacToeRecord(int openingMoves) {
+		int[] squares = { 4, 0, 8, 2, 1, 7, 6, 3, 5 };
+		return new GameRecord(BoardGeometry.STANDARD,
+				Search.MINIMAX_ALPHA_BETA, GameRecord.HUMAN, Board.X,
+				Board.TIE, 1234567890123L, 45678, 1200, 34000, squares,
+				squares.length, openingMoves);
+	}
+
+	/**
+	 * A game of Gomoku that O opened and X won.
+	 */
+	private static GameRecord createGomokuRecord(int openingMoves) {
+		int[] squares = { 112, 113, 97, 128, 98, 126, 99, 143, 100 };
+		return new GameRecord(BoardGeometry.of(15, 15, 5),
+				Search.PRINCIPAL_VARIATION, Search.NEGAMAX_ALPHA_BETA, Board.O,
+				Board.X, 1234567899999L, 2000, 300, 600, squares,
+				squares.length, openingMoves);
+	}
+
+	private static void writeRecords(File file, GameRecord... records)
+			throws IOException {
+		GameRecordWriter writer = new GameRecordWriter(file);
+		try {
+			for (GameRecord record : records) {
+				assertTrue(writer.write(record));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void assertRecordEquals(GameRecord expected,
+			GameRecord actual) {
+		assertEquals(expected.getGeometry(), actual.getGeometry());
+		assertEquals(expected.getEngine(Board.X), actual.getEngine(Board.X));
+		assertEquals(expected.getEngine(Board.O), actual.getEngine(Board.O));
+		assertEquals(expected.getFirstPlayer(), actual.getFirstPlayer());
+		assertEquals(expected.getResult(), actual.getResult());
+		assertEquals(expected.getStartTime(), actual.getStartTime());
+		assertEquals(expected.getDuration(), actual.getDuration());
+		assertEquals(expected.getThinkingTime(Board.X),
+				actual.getThinkingTime(Board.X));
+		assertEquals(expected.getThinkingTime(Board.O),
+				actual.getThinkingTime(Board.O));
+		assertEquals(expected.getOpeningMoves(), actual.getOpeningMoves());
+		assertEquals(expected.getMoveCount(), actual.getMoveCount());
+		for (int i = 0; i < expected.getMoveCount(); ++i) {
+			assertEquals(expected.getSquare(i), actual.getSquare(i));
+		}
+	}
+
+}
@@ -0,0 +1,241 @@
+package tictactoebot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import tictactoebot.Board.Move;
+
+/**
+ * Checks searches against the perfect-play tablebase on every reachable 3x3
+ * position. Like a computer player over a game, each engine keeps one
+ * transposition table for all of its searches, so later searches reuse what
+ * earlier ones stored.
+ * 
+ * @author rongil
+ *
+ */
+public class SearchTest {
+
+	// Scores of a win in the search and in the tablebase.
+	private static final int SEARCH_WIN = 100000;
+	private static final int TABLEBASE_WIN = 100;
+
+	@TempDir
+	static File directory;
+
+	private static Tablebase tablebase;
+	private static ForkJoinPool searchPool;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		File file = new File(directory, "tictactoe.tb");
+		Tablebase.generate(file);
+		tablebase = Tablebase.open(file);
+		searchPool = new ForkJoinPool(4);
+	}
+
+	@AfterAll
+	static void tearDown() {
+		searchPool.shutdownNow();
+	}
+
+	@Test
+	public void minimaxPlaysPerfectly() throws TimeoutException {
+		checkAllPositions(Search.MINIMAX_ALPHA_BETA, null);
+	}
+
+	@Test
+	public void negamaxPlaysPerfectlyWithSharedTable()
+			throws TimeoutException {
+		checkAllPositions(Search.NEGAMAX_ALPHA_BETA, null);
+	}
+
+	@Test
+	public void principalVariationPlaysPerfectlyWithSharedTable()
+			throws TimeoutException {
+		checkAllPositions(Search.PRINCIPAL_VARIATION, null);
+	}
+
+	@Test
+	public void parallelNegamaxPlaysPerfectlyWithSharedTable()
+			throws TimeoutException {
+		checkAllPositions(Search.NEGAMAX_ALPHA_BETA, searchPool);
+	}
+
+	@Test
+	public void parallelPrincipalVariationPlaysPerfectlyWithSharedTable()
+			throws TimeoutException {
+		checkAllPositions(Search.PRINCIPAL_VARIATION, searchPool);
+	}
+
+	@Test
+	public void finishedGameHasNoMove() throws TimeoutException {
+		// X has won with empty squares left, then a full, drawn board.
+		Board won = createPosition(0, 3, 1, 4, 2);
+		Board drawn = createPosition(0, 1, 2, 4, 3, 5, 7, 6, 8);
+
+		for (int searchType = Search.MINIMAX_ALPHA_BETA;
+				searchType <= Search.PRINCIPAL_VARIATION; ++searchType) {
+			for (ForkJoinPool pool : new ForkJoinPool[] { null,
+					searchPool }) {
+				Search search = createSearch(won, Board.O, searchType, pool,
+						new TranspositionTable());
+				assertNull(search.call());
+				assertEquals(-SEARCH_WIN + 5, search.getBestValue());
+
+				search = createSearch(drawn, Board.O, searchType, pool,
+						new TranspositionTable());
+				assertNull(search.call());
+				assertEquals(0, search.getBestValue());
+			}
+		}
+	}
+
+	@Test
+	public void monteCarloFinishedGameHasNoMove() throws TimeoutException {
+		// X has won with empty squares left.
+		Board won = createPosition(0, 3, 1, 4, 2);
+
+		for (ForkJoinPool pool : new ForkJoinPool[] { null, searchPool }) {
+			Search search = createSearch(won, Board.O,
+					Search.MONTE_CARLO_TREE_SEARCH, pool, null);
+			search.setLimits(SearchLimits.nodes(100));
+			assertNull(search.call());
+		}
+	}
+
+	@Test
+	public void tinyLimitsStillFinishFirstIteration()
+			throws TimeoutException {
+		// Not even one iteration on a Gomoku board fits these limits.
+		Board gomoku = new Board(BoardGeometry.of(15, 15, 5));
+		gomoku.makeMove(112, Board.X);
+		SearchLimits[] tinyLimits = { SearchLimits.nodes(1),
+				SearchLimits.moveTime(0) };
+
+		for (int searchType = Search.MINIMAX_ALPHA_BETA;
+				searchType <= Search.PRINCIPAL_VARIATION; ++searchType) {
+			for (ForkJoinPool pool : new ForkJoinPool[] { null,
+					searchPool }) {
+				for (SearchLimits limits : tinyLimits) {
+					Search search = createSearch(gomoku, Board.O, searchType,
+							pool, new TranspositionTable());
+					search.setLimits(limits);
+					Move move = search.call();
+					assertNotNull(move);
+					assertEquals(Board.EMPTY, gomoku.getSquareValue(gomoku
+							.toSquare(move)));
+					assertEquals(1, search.getCompletedDepth());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches every reachable position that is not over, with either player
+	 * starting, reusing one transposition table, and checks each score and
+	 * move against the tablebase.
+	 */
+	private static void checkAllPositions(int searchType,
+			ForkJoinPool searchPool) throws TimeoutException {
+		TranspositionTable transpositionTable = new TranspositionTable();
+		Set<String> visited = new HashSet<String>();
+		checkPositions(new Board(), Board.X, searchType, searchPool,
+				transpositionTable, visited);
+		checkPositions(new Board(), Board.O, searchType, searchPool,
+				transpositionTable, visited);
+	}
+
+	private static void checkPositions(Board board, int playerID,
+			int searchType, ForkJoinPool searchPool,
+			TranspositionTable transpositionTable, Set<String> visited)
+			throws TimeoutException {
+
+		if (board.checkGameOver() != Board.INCOMPLETE
+				|| !visited.add(describe(board, playerID))) {
+			return;
+		}
+
+		Search search = createSearch(board, playerID, searchType, searchPool,
+				transpositionTable);
+		Move move = search.call();
+
+		String position = describe(board, playerID);
+		int expected = tablebase.getScore(board, playerID);
+		assertEquals(toSearchScore(expected), search.getBestValue(), position);
+		assertNotNull(move, position);
+		int otherPlayerID = playerID == Board.X ? Board.O : Board.X;
+		assertEquals(expected, -tablebase.getScore(board.testMove(move,
+				playerID), otherPlayerID), position + " " + move);
+
+		for (int square = board.getNextValidSquare(0);
+				square != Board.NO_SQUARE;
+				square = board.getNextValidSquare(square + 1)) {
+			board.makeMove(square, playerID);
+			checkPositions(board, otherPlayerID, searchType, searchPool,
+					transpositionTable, visited);
+			board.unmakeMove(square);
+		}
+
+	}
+
+	/**
+	 * Plays the given squares on an empty 3x3 board, X first.
+	 */
+	private static Board createPosition(int... squares) {
+		Board board = new Board();
+		for (int square : squares) {
+			board.makeMove(square, board.getNumberOfMoves() % 2 == 0 ? Board.X
+					: Board.O);
+		}
+		return board;
+	}
+
+	private static Search createSearch(Board board, int playerID,
+			int searchType, ForkJoinPool searchPool,
+			TranspositionTable transpositionTable) {
+		Search search = new Search(board, playerID, transpositionTable);
+		search.setQuiet(true);
+		search.setRecorded(false);
+		search.setSearchType(searchType);
+		search.setSearchPool(searchPool);
+		search.setLimits(SearchLimits.INFINITE);
+		return search;
+	}
+
+	/**
+	 * Converts a tablebase score to the search's scale, where a win is worth
+	 * SEARCH_WIN less the number of moves played.
+	 */
+	private static int toSearchScore(int score) {
+		if (score > 0) {
+			return score - TABLEBASE_WIN + SEARCH_WIN;
+		} else if (score < 0) {
+			return score + TABLEBASE_WIN - SEARCH_WIN;
+		}
+		return 0;
+	}
+
+	private static String describe(Board board, int playerID) {
+		StringBuilder description = new StringBuilder();
+		for (int square = 0; square < 9; ++square) {
+			description.append(".XO".charAt(board.getSquareValue(square)));
+		}
+		return description.append(playerID == Board.X ? " X" : " O")
+				.toString();
+	}
+
+}